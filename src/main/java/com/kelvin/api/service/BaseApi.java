@@ -1,32 +1,334 @@
 package com.kelvin.api.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.kelvin.api.util.StringUtil;
 import com.kelvin.smartwarehouse.exception.EntityWithIdNotFoundException;
 import com.kelvin.smartwarehouse.exception.IdMissingException;
+import com.kelvin.smartwarehouse.exception.IdempotentReplayException;
+import com.kelvin.smartwarehouse.exception.InvalidParameterException;
+import com.kelvin.smartwarehouse.model.IdempotencyRecord;
+import com.kelvin.smartwarehouse.service.IdempotencyStore;
+import com.kelvin.smartwarehouse.utils.CsvUtils;
+import com.kelvin.smartwarehouse.utils.XlsxUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.persistence.EntityManager;
+import javax.persistence.Table;
+import javax.persistence.Tuple;
+import javax.persistence.TupleElement;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.*;
+import javax.persistence.metamodel.Attribute;
+import javax.persistence.metamodel.EntityType;
+import javax.persistence.metamodel.SingularAttribute;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.kelvin.smartwarehouse.management.AppConstants.ORDER_BY_ASC;
 import static com.kelvin.smartwarehouse.management.AppConstants.ORDER_BY_DESC;
 
+@Slf4j
 public abstract class BaseApi<T> extends FilterBuilder<T>{
 
     protected final Class<T> entityClass;
 
+    private final String entityDisplayName;
+
+    private static final String MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+
+    private static final Set<String> LIST_PARAMETERS = Set.of("startRow", "pageSize", "orderBy", "cursor", "count", "fields");
+
+    private String idAttributeName;
+
+    private Boolean postgres;
+
+    private Boolean updateByIdSupported;
+
+    private Boolean loadingDeleteRequired;
+
+    private final QueryShapeStats queryShapeStats;
+
+    private BoundedCache<String, Long> countCache;
+
+    private BoundedCache<String, ResponseEntity<?>> listCache;
+
+    private BoundedCache<String, T> entityCache;
+
+    private volatile BloomFilter existingIds;
+
+    private volatile BloomFilter rebuildingExistingIds;
+
+    private volatile long existingIdsBuiltAt;
+
+    private final AtomicBoolean existingIdsRebuilding = new AtomicBoolean();
+
+    private final LongAdder negativeLookupShortCircuits = new LongAdder();
+
+    private ExecutorService rebuildExecutor;
+
+    @Value("${api.bulk.max-rows:10000}")
+    int bulkMaxRows;
+
+    @Value("${api.bulk.flush-interval:500}")
+    int bulkFlushInterval;
+
+    @Value("${api.import.chunk-size:5000}")
+    int importChunkSize;
+
+    @Value("${api.import.batch-size:500}")
+    int importBatchSize;
+
+    @Value("${api.import.max-rejected-lines:1000}")
+    int importMaxRejectedLines;
+
+    @Value("${api.mget.max-ids:1000}")
+    int multiGetMaxIds;
+
+    @Value("${api.mget.chunk-size:500}")
+    int multiGetChunkSize;
+
+    @Value("${api.negative-lookup.rebuild-millis:600000}")
+    long negativeLookupRebuildMillis;
+
+    @Value("${api.negative-lookup.false-positive-probability:0.01}")
+    double negativeLookupFalsePositiveProbability;
+
+    @Value("${api.count-cache.ttl-millis:30000}")
+    long countCacheTtlMillis;
+
+    @Value("${api.count-cache.max-size:1000}")
+    int countCacheMaxSize;
+
+    @Value("${api.list-cache.enabled:false}")
+    boolean listCacheEnabled;
+
+    @Value("${api.list-cache.ttl-millis:5000}")
+    long listCacheTtlMillis;
+
+    @Value("${api.list-cache.max-size:1000}")
+    int listCacheMaxSize;
+
+    @Value("${api.stream.fetch-size:500}")
+    int streamFetchSize;
+
+    @Value("${api.stream.clear-interval:500}")
+    int streamClearInterval;
+
     @Autowired
     EntityManager entityManager;
 
+    @Autowired
+    ObjectMapper objectMapper;
+
+    @Autowired
+    IdempotencyStore idempotencyStore;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
     protected BaseApi(Class<T> entityClass) {
         this.entityClass = entityClass;
+        this.entityDisplayName = StringUtil.fromCamelCaseToSeparatedWordsWhenFirstWordStartsWithCapitalLetter(entityClass.getSimpleName());
+        this.queryShapeStats = new QueryShapeStats(entityClass.getSimpleName(), 1000);
+    }
+
+    @PostConstruct
+    void initCaches() {
+        countCache = new BoundedCache<>(countCacheMaxSize, countCacheTtlMillis);
+        listCache = new BoundedCache<>(listCacheMaxSize, listCacheTtlMillis);
+        if (getEntityCacheMaxSize() > 0) {
+            entityCache = new BoundedCache<>(getEntityCacheMaxSize(), getEntityCacheTtlMillis());
+        }
+    }
+
+    @PreDestroy
+    synchronized void closeRebuildExecutor() {
+        if (rebuildExecutor != null) {
+            rebuildExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the rebuild of an in memory lookup in a read only transaction on the background thread of
+     * this api, unless the flag shows it's already running. Callers keep answering from what they
+     * have, or from the database, so a request never waits for a full scan of the table.
+     */
+    protected void rebuildInBackground(AtomicBoolean rebuilding, Runnable rebuild) {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            getRebuildExecutor().execute(() -> {
+                try {
+                    TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+                    transactionTemplate.setReadOnly(true);
+                    transactionTemplate.executeWithoutResult(status -> rebuild.run());
+                } catch (RuntimeException e) {
+                    log.error("Rebuild of {} lookup failed!", getEntityClass().getSimpleName(), e);
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // shutting down
+            rebuilding.set(false);
+        }
+    }
+
+    private synchronized ExecutorService getRebuildExecutor() {
+        if (rebuildExecutor == null) {
+            String threadName = getEntityClass().getSimpleName() + "-rebuilds";
+            rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return rebuildExecutor;
+    }
+
+    // subclasses enable the read-through cache of fetch by returning a positive size
+    protected int getEntityCacheMaxSize() {
+        return 0;
+    }
+
+    protected long getEntityCacheTtlMillis() {
+        return 60000;
+    }
+
+    // only safe for entities whose rows are all written through this api, or else new rows stay
+    // invisible until the next rebuild of the filter
+    protected boolean isNegativeLookupEnabled() {
+        return false;
+    }
+
+    protected boolean mightExist(String id) {
+        if (!isNegativeLookupEnabled()) {
+            return true;
+        }
+        BloomFilter filter = existingIds;
+        if (filter == null || System.currentTimeMillis() - existingIdsBuiltAt > negativeLookupRebuildMillis) {
+            // the scan of every id runs in the background, callers keep answering from the previous
+            // filter meanwhile, or from the database until the first one is built
+            rebuildInBackground(existingIdsRebuilding, this::rebuildExistingIds);
+            if (filter == null) {
+                return true;
+            }
+        }
+        if (!filter.mightContain(id)) {
+            negativeLookupShortCircuits.increment();
+            return false;
+        }
+        return true;
+    }
+
+    @GetMapping("/_stats/negative-lookup")
+    public ResponseEntity<Map<String, Object>> getNegativeLookupStats() {
+        BloomFilter filter = existingIds;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", isNegativeLookupEnabled());
+        stats.put("built", filter != null);
+        stats.put("builtAt", filter != null ? existingIdsBuiltAt : null);
+        stats.put("rebuilding", existingIdsRebuilding.get());
+        stats.put("shortCircuits", negativeLookupShortCircuits.sum());
+        return ResponseEntity.ok(stats);
+    }
+
+    private void rebuildExistingIds() {
+        // a rebuild queued right after another one finished finds the filter fresh
+        if (existingIds != null && System.currentTimeMillis() - existingIdsBuiltAt <= negativeLookupRebuildMillis) {
+            return;
+        }
+
+        // ids committed while the snapshot below is read are added to both filters by addExistingId
+        String entityName = entityManager.getMetamodel().entity(getEntityClass()).getName();
+        long rowCount = entityManager.createQuery("SELECT COUNT(e) FROM " + entityName + " e", Long.class).getSingleResult();
+
+        BloomFilter filter = new BloomFilter(Math.max(rowCount * 2, 1024), negativeLookupFalsePositiveProbability);
+        rebuildingExistingIds = filter;
+
+        String jpql = String.format("SELECT e.%s FROM %s e", getIdAttributeName(), entityName);
+        try (Stream<Object> ids = entityManager.createQuery(jpql, Object.class)
+                .setHint(QueryHints.HINT_FETCH_SIZE, streamFetchSize)
+                .getResultStream()) {
+            ids.forEach(id -> filter.put(id.toString()));
+        }
+
+        existingIds = filter;
+        rebuildingExistingIds = null;
+        existingIdsBuiltAt = System.currentTimeMillis();
+    }
+
+    protected void addExistingId(Object id) {
+        if (!isNegativeLookupEnabled() || id == null) {
+            return;
+        }
+        // read before the current filter, a rebuild swaps in the new filter before it clears the rebuilding one
+        BloomFilter rebuildingFilter = rebuildingExistingIds;
+        if (rebuildingFilter != null) {
+            rebuildingFilter.put(id.toString());
+        }
+        BloomFilter filter = existingIds;
+        if (filter != null) {
+            filter.put(id.toString());
+        }
+    }
+
+    private Object getIdOf(T object) {
+        return entityManager.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(object);
     }
 
     protected Class<T> getEntityClass() {
@@ -42,33 +344,515 @@ public abstract class BaseApi<T> extends FilterBuilder<T>{
     public ResponseEntity getList(
             @RequestParam(value = "startRow", required = false, defaultValue = "0") Integer startRow,
             @RequestParam(value = "pageSize", required = false, defaultValue = "10") Integer pageSize,
-            @RequestParam(value = "orderBy", required = false) String orderBy
+            @RequestParam(value = "orderBy", required = false) String orderBy,
+            @RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "count", required = false, defaultValue = "exact") String count,
+            @RequestParam(value = "fields", required = false) String fields
     ) throws Exception {
 
-        long listSize = count();
-        List<T> list;
-        if (listSize == 0) {
+        if (!listCacheEnabled) {
+            return loadList(startRow, pageSize, orderBy, cursor, count, fields);
+        }
+
+        String key = String.join("|", getParameterSignature(LIST_PARAMETERS), String.valueOf(startRow),
+                String.valueOf(pageSize), String.valueOf(orderBy), String.valueOf(cursor), count, String.valueOf(fields));
+        ResponseEntity<?> cachedList = listCache.get(key);
+        if (cachedList != null) {
+            return cachedList;
+        }
+
+        long generation = listCache.getGeneration();
+        ResponseEntity<?> list = loadList(startRow, pageSize, orderBy, cursor, count, fields);
+        listCache.put(key, list, generation);
+        return list;
+    }
+
+    protected ResponseEntity<?> loadList(Integer startRow, Integer pageSize, String orderBy, String cursor, String count, String fields) throws Exception {
+
+        CountMode countMode = CountMode.fromValue(count);
+        List<String> fieldList = getFields(fields);
+
+        if (cursor != null) {
+            return getListAfterCursor(pageSize, orderBy, cursor, countMode, fieldList);
+        }
+
+        if (countMode == CountMode.NONE) {
+            TypedQuery<?> search = getListSearch(orderBy, fieldList).setFirstResult(startRow);
+            List<?> list = getPageWithLookahead(search, pageSize);
+            boolean hasMore = pageSize != 0 && list.size() > pageSize;
+            if (hasMore) {
+                list = list.subList(0, pageSize);
+            }
+
+            return ResponseEntity.ok()
+                    .header("startRow", String.valueOf(startRow))
+                    .header("pageSize", String.valueOf(pageSize != 0 ? pageSize : list.size()))
+                    .header("listSizeMode", countMode.getValue())
+                    .header("hasMore", String.valueOf(hasMore))
+                    .body(list);
+        }
+
+        ListSize listSize = count(countMode);
+        List<?> list;
+        if (listSize.getValue() == 0) {
             list = new ArrayList<>();
         } else {
             int currentPage = 0;
             if (pageSize != 0) {
                 currentPage = startRow / pageSize;
             } else {
-                pageSize = Long.valueOf(listSize).intValue();
+                pageSize = Long.valueOf(listSize.getValue()).intValue();
             }
-            TypedQuery<T> search = getSearch(orderBy);
-            list = search.setFirstResult(startRow)
+            TypedQuery<?> search = getListSearch(orderBy, fieldList);
+            list = toRows(search.setFirstResult(startRow)
                     .setMaxResults(pageSize)
-                    .getResultList();
+                    .getResultList());
         }
 
         return ResponseEntity.ok()
                 .header("startRow", String.valueOf(startRow))
                 .header("pageSize", String.valueOf(pageSize))
-                .header("listSize", String.valueOf(listSize))
+                .header("listSize", String.valueOf(listSize.getValue()))
+                .header("listSizeMode", listSize.getCountMode().getValue())
                 .body(list);
     }
 
+    @GetMapping(value = {"", "/stream"}, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Transactional(readOnly = true)
+    public void stream(
+            @RequestParam(value = "orderBy", required = false) String orderBy,
+            @RequestParam(value = "fields", required = false) String fields,
+            HttpServletResponse response
+    ) throws Exception {
+
+        List<String> fieldList = getFields(fields);
+        TypedQuery<?> search = getListSearch(orderBy, fieldList)
+                .setHint(QueryHints.HINT_FETCH_SIZE, streamFetchSize)
+                .setHint(QueryHints.HINT_READONLY, true);
+
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        OutputStream outputStream = response.getOutputStream();
+
+        try (Stream<?> rows = search.getResultStream()) {
+            Iterator<?> iterator = rows.iterator();
+            int rowCount = 0;
+            while (iterator.hasNext()) {
+                Object row = iterator.next();
+                outputStream.write(objectMapper.writeValueAsBytes(row instanceof Tuple ? toRow((Tuple) row) : row));
+                outputStream.write('\n');
+
+                if (++rowCount % streamClearInterval == 0) {
+                    entityManager.clear();
+                    outputStream.flush();
+                }
+            }
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * Passes every entity to the writer in a read only transaction of its own, read by a scrolling query
+     * that fetches api.stream.fetch-size rows at a time, while the persistence context is cleared every
+     * api.stream.clear-interval rows. Memory stays bounded whatever the number of rows, and the transaction
+     * doesn't depend on the handler's, so this can run in a StreamingResponseBody after the handler returned.
+     */
+    protected void scrollAll(EntityWriter<T> writer) throws IOException {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setReadOnly(true);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+                CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(getEntityClass());
+                criteriaQuery.select(criteriaQuery.from(getEntityClass()));
+
+                try (Stream<T> entities = entityManager.createQuery(criteriaQuery)
+                        .setHint(QueryHints.HINT_FETCH_SIZE, streamFetchSize)
+                        .setHint(QueryHints.HINT_READONLY, true)
+                        .getResultStream()) {
+                    Iterator<T> iterator = entities.iterator();
+                    writer.write(new Iterator<>() {
+
+                        private int rowCount;
+
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        // the rows returned before were written already
+                        @Override
+                        public T next() {
+                            if (++rowCount % streamClearInterval == 0) {
+                                entityManager.clear();
+                            }
+                            return iterator.next();
+                        }
+                    });
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    @FunctionalInterface
+    protected interface EntityWriter<T> {
+
+        void write(Iterator<T> entities) throws IOException;
+    }
+
+    protected ResponseEntity<?> getListAfterCursor(Integer pageSize, String orderBy, String cursor, CountMode countMode, List<String> fields) {
+
+        List<SortKey> sortKeys = getKeysetSortKeys(orderBy);
+        List<String> cursorValues = cursor.isBlank() ? Collections.emptyList() : KeysetCursor.decode(cursor);
+
+        // the sort keys are selected as well, because the next cursor is built from them
+        List<String> selectedFields = null;
+        if (fields != null) {
+            selectedFields = new ArrayList<>(fields);
+            for (SortKey sortKey : sortKeys) {
+                if (!selectedFields.contains(sortKey.getProperty())) {
+                    selectedFields.add(sortKey.getProperty());
+                }
+            }
+        }
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        List<?> list;
+        boolean hasMore;
+        if (countMode == CountMode.NONE) {
+            list = getPageWithLookahead(getSeekListSearch(sortKeys, cursorValues, selectedFields), pageSize);
+            hasMore = pageSize != 0 && list.size() > pageSize;
+            if (hasMore) {
+                list = list.subList(0, pageSize);
+            }
+            if (pageSize == 0) {
+                pageSize = list.size();
+            }
+            response.header("listSizeMode", countMode.getValue())
+                    .header("hasMore", String.valueOf(hasMore));
+        } else {
+            ListSize listSize = count(countMode);
+            if (listSize.getValue() == 0) {
+                list = new ArrayList<>();
+            } else {
+                if (pageSize == 0) {
+                    pageSize = Long.valueOf(listSize.getValue()).intValue();
+                }
+                TypedQuery<?> search = getSeekListSearch(sortKeys, cursorValues, selectedFields);
+                list = toRows(search.setMaxResults(pageSize)
+                        .getResultList());
+            }
+            hasMore = !list.isEmpty() && list.size() == pageSize;
+            response.header("listSize", String.valueOf(listSize.getValue()))
+                    .header("listSizeMode", listSize.getCountMode().getValue());
+        }
+
+        response.header("pageSize", String.valueOf(pageSize));
+        if (hasMore) {
+            response.header("nextCursor", KeysetCursor.encode(sortKeys, list.get(list.size() - 1)));
+        }
+        if (fields != null && selectedFields.size() > fields.size()) {
+            for (Object row : list) {
+                ((Map<?, ?>) row).keySet().retainAll(fields);
+            }
+        }
+        return response.body(list);
+    }
+
+    // one row more than the page is read, so that the next page can be detected without counting
+    private List<?> getPageWithLookahead(TypedQuery<?> search, int pageSize) {
+        if (pageSize != 0) {
+            search.setMaxResults(pageSize + 1);
+        }
+        return toRows(search.getResultList());
+    }
+
+    protected TypedQuery<?> getListSearch(String orderBy, List<String> fields) throws Exception {
+        if (fields == null) {
+            return getSearch(orderBy);
+        }
+        return getProjectionSearch("search", getSortKeys(orderBy), Collections.emptyList(), fields);
+    }
+
+    protected TypedQuery<?> getSeekListSearch(List<SortKey> sortKeys, List<String> cursorValues, List<String> fields) {
+        if (fields == null) {
+            return getSeekSearch(sortKeys, cursorValues);
+        }
+        return getProjectionSearch(cursorValues.isEmpty() ? "seek" : "seekAfter", sortKeys, cursorValues, fields);
+    }
+
+    protected TypedQuery<T> getSeekSearch(List<SortKey> sortKeys, List<String> cursorValues) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(getEntityClass());
+
+        Root<T> root = criteriaQuery.from(getEntityClass());
+        criteriaQuery.select(root);
+
+        List<Predicate> predicates = new ArrayList<>(getFilters(criteriaBuilder, root));
+        if (!cursorValues.isEmpty()) {
+            predicates.add(seekPredicate(sortKeys, cursorValues, criteriaBuilder, root));
+        }
+        criteriaQuery.where(predicates.toArray(new Predicate[0]));
+
+        criteriaQuery.orderBy(toOrderList(sortKeys, criteriaBuilder, root));
+
+        queryShapeStats.record(getQueryShape(cursorValues.isEmpty() ? "seek" : "seekAfter", toOrderBy(sortKeys)));
+
+        return getEntityManager().createQuery(criteriaQuery);
+    }
+
+    // tuples of basic attributes are never registered in the persistence context
+    protected TypedQuery<Tuple> getProjectionSearch(String queryType, List<SortKey> sortKeys, List<String> cursorValues, List<String> fields) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+
+        Root<T> root = criteriaQuery.from(getEntityClass());
+        criteriaQuery.multiselect(toSelections(fields, root));
+
+        List<Predicate> predicates = new ArrayList<>(getFilters(criteriaBuilder, root));
+        if (!cursorValues.isEmpty()) {
+            predicates.add(seekPredicate(sortKeys, cursorValues, criteriaBuilder, root));
+        }
+        criteriaQuery.where(predicates.toArray(new Predicate[0]));
+
+        criteriaQuery.orderBy(toOrderList(sortKeys, criteriaBuilder, root));
+
+        queryShapeStats.record(getQueryShape(queryType + fields, toOrderBy(sortKeys)));
+
+        return getEntityManager().createQuery(criteriaQuery);
+    }
+
+    private List<Selection<?>> toSelections(List<String> fields, Root<T> root) {
+        List<Selection<?>> selections = new ArrayList<>();
+        for (String field : fields) {
+            selections.add(root.get(field).alias(field));
+        }
+        return selections;
+    }
+
+    private List<?> toRows(List<?> results) {
+        if (results.isEmpty() || !(results.get(0) instanceof Tuple)) {
+            return results;
+        }
+        List<Map<String, Object>> rows = new ArrayList<>(results.size());
+        for (Object result : results) {
+            rows.add(toRow((Tuple) result));
+        }
+        return rows;
+    }
+
+    private Map<String, Object> toRow(Tuple tuple) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        for (TupleElement<?> element : tuple.getElements()) {
+            row.put(element.getAlias(), tuple.get(element));
+        }
+        return row;
+    }
+
+    protected List<String> getFields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+
+        EntityType<T> entityType = entityManager.getMetamodel().entity(getEntityClass());
+        List<String> fieldList = new ArrayList<>();
+        for (String field : fromValueToList(fields)) {
+            field = field.trim();
+            try {
+                entityType.getSingularAttribute(field);
+            } catch (IllegalArgumentException e) {
+                String message = String.format("%s is not a field of %s!", field, getEntityClass().getSimpleName());
+                throw new InvalidParameterException(message, e);
+            }
+            if (!fieldList.contains(field)) {
+                fieldList.add(field);
+            }
+        }
+        return fieldList;
+    }
+
+    private String toOrderBy(List<SortKey> sortKeys) {
+        return sortKeys.stream()
+                .map(sortKey -> sortKey.getProperty() + (sortKey.isAscending() ? " asc" : " desc"))
+                .collect(Collectors.joining(","));
+    }
+
+    // (k1, k2, ..., kn) > (v1, v2, ..., vn) expanded per key, so that every key can have its own direction.
+    // Nulls sort last in both directions (hibernate.order_by.default_null_ordering=last), so the rows
+    // after a value include the nulls, and no row comes after a null but on the keys that follow it.
+    private Predicate seekPredicate(List<SortKey> sortKeys, List<String> cursorValues, CriteriaBuilder criteriaBuilder, Root<T> root) {
+        if (cursorValues.size() != sortKeys.size()) {
+            throw new InvalidParameterException("Cursor doesn't match the requested orderBy!");
+        }
+
+        List<Predicate> alternatives = new ArrayList<>();
+        for (int i = 0; i < sortKeys.size(); i++) {
+            SortKey sortKey = sortKeys.get(i);
+            Path<Comparable> path = root.get(sortKey.getProperty());
+            Comparable value = KeysetCursor.toValue(path.getJavaType(), cursorValues.get(i));
+            if (value == null) {
+                continue;
+            }
+
+            List<Predicate> conjunction = new ArrayList<>();
+            for (int j = 0; j < i; j++) {
+                Path<Comparable> equalPath = root.get(sortKeys.get(j).getProperty());
+                Comparable equalValue = KeysetCursor.toValue(equalPath.getJavaType(), cursorValues.get(j));
+                conjunction.add(equalValue == null
+                        ? criteriaBuilder.isNull(equalPath)
+                        : criteriaBuilder.equal(equalPath, equalValue));
+            }
+            conjunction.add(criteriaBuilder.or(
+                    sortKey.isAscending()
+                            ? criteriaBuilder.greaterThan(path, value)
+                            : criteriaBuilder.lessThan(path, value),
+                    criteriaBuilder.isNull(path)));
+
+            alternatives.add(criteriaBuilder.and(conjunction.toArray(new Predicate[0])));
+        }
+        return criteriaBuilder.or(alternatives.toArray(new Predicate[0]));
+    }
+
+    protected List<SortKey> getKeysetSortKeys(String orderBy) {
+        // getSortKeys already ends with the id, which makes every key unique
+        return getSortKeys(orderBy);
+    }
+
+    protected String getIdAttributeName() {
+        if (idAttributeName == null) {
+            EntityType<T> entityType = entityManager.getMetamodel().entity(getEntityClass());
+            idAttributeName = entityType.getId(entityType.getIdType().getJavaType()).getName();
+        }
+        return idAttributeName;
+    }
+
+    protected ListSize count(CountMode countMode) {
+        if (countMode == CountMode.ESTIMATED) {
+            Long estimatedCount = estimateCount();
+            if (estimatedCount != null) {
+                return new ListSize(estimatedCount, CountMode.ESTIMATED);
+            }
+            countMode = CountMode.CACHED;
+        }
+
+        if (countMode == CountMode.CACHED) {
+            String filterSignature = getParameterSignature(LIST_PARAMETERS);
+            Long cachedCount = countCache.get(filterSignature);
+            if (cachedCount != null) {
+                return new ListSize(cachedCount, CountMode.CACHED);
+            }
+
+            long generation = countCache.getGeneration();
+            long listSize = count();
+            countCache.put(filterSignature, listSize, generation);
+            return new ListSize(listSize, CountMode.CACHED);
+        }
+
+        return new ListSize(count(), CountMode.EXACT);
+    }
+
+    // planner statistics only describe the whole table, so they are used when no filter is active
+    protected Long estimateCount() {
+        Table table = getEntityClass().getAnnotation(Table.class);
+        if (table == null || !isPostgres() || hasActiveFilters()) {
+            return null;
+        }
+
+        Number reltuples = (Number) entityManager
+                .createNativeQuery("SELECT CAST(reltuples AS BIGINT) FROM pg_class WHERE relname = ?1")
+                .setParameter(1, table.name())
+                .getResultStream()
+                .findFirst()
+                .orElse(null);
+
+        if (reltuples == null || reltuples.longValue() < 0) {
+            return null;
+        }
+        return reltuples.longValue();
+    }
+
+    protected boolean hasActiveFilters() {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(getEntityClass());
+        return !getFilters(criteriaBuilder, criteriaQuery.from(getEntityClass())).isEmpty();
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            String databaseProductName = entityManager.unwrap(Session.class)
+                    .doReturningWork(connection -> connection.getMetaData().getDatabaseProductName());
+            postgres = "PostgreSQL".equals(databaseProductName);
+        }
+        return postgres;
+    }
+
+    protected void onEntitiesChanged() {
+        countCache.invalidateAll();
+        listCache.invalidateAll();
+        if (entityCache != null) {
+            entityCache.invalidateAll();
+        }
+    }
+
+    protected void onEntityChanged(String id) {
+        countCache.invalidateAll();
+        listCache.invalidateAll();
+        if (entityCache != null) {
+            entityCache.invalidate(id);
+        }
+    }
+
+    @EventListener
+    public void onEntityChangedEvent(EntityChangedEvent event) {
+        if (event.getEntityClass() == getEntityClass()) {
+            afterCommit(() -> onEntityChanged(event.getId()));
+        }
+    }
+
+    // called after the commit of a single entity write, for subclasses keeping in memory indexes
+    protected void onEntityWritten(T object) {
+    }
+
+    protected void onEntityRemoved(String id) {
+    }
+
+    protected void onEntityPatched(String id, Map<String, Object> values) {
+    }
+
+    // called after the commit of bulk statements, which write rows without passing through the hooks above
+    protected void onBulkWrite() {
+    }
+
+    @GetMapping("/_stats/caches")
+    public ResponseEntity<Map<String, BoundedCache<?, ?>>> getCacheStats() {
+        Map<String, BoundedCache<?, ?>> caches = new LinkedHashMap<>();
+        caches.put("count", countCache);
+        caches.put("list", listCache);
+        if (entityCache != null) {
+            caches.put("entity", entityCache);
+        }
+        return ResponseEntity.ok(caches);
+    }
+
+    protected void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
     protected long count(){
         CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
 
@@ -80,9 +864,33 @@ public abstract class BaseApi<T> extends FilterBuilder<T>{
         List<Predicate> predicates = getFilters(criteriaBuilder, root);
         criteriaQuery.where(predicates.toArray(new Predicate[0]));
 
+        queryShapeStats.record(getQueryShape("count", ""));
+
         return entityManager.createQuery(criteriaQuery).getSingleResult();
     }
 
+    protected String getQueryShape(String queryType, String orderBy) {
+        return queryType + "|" + getActiveParameterNames(LIST_PARAMETERS) + "|" + orderBy;
+    }
+
+    @GetMapping("/_stats/queries")
+    public ResponseEntity<Map<String, Object>> getQueryStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queryShapes", queryShapeStats);
+        // hibernate only counts plan cache lookups with generate_statistics, and for every entity at once
+        Statistics statistics = entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        if (statistics.isStatisticsEnabled()) {
+            long hits = statistics.getQueryPlanCacheHitCount();
+            long misses = statistics.getQueryPlanCacheMissCount();
+            Map<String, Object> planCache = new LinkedHashMap<>();
+            planCache.put("hits", hits);
+            planCache.put("misses", misses);
+            planCache.put("hitRate", hits + misses == 0 ? 0 : (double) hits / (hits + misses));
+            stats.put("planCache", planCache);
+        }
+        return ResponseEntity.ok(stats);
+    }
+
     protected TypedQuery<T> getSearch(String orderBy) throws Exception {
         CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
 
@@ -97,12 +905,31 @@ public abstract class BaseApi<T> extends FilterBuilder<T>{
         List<Order> orderList = sort(orderBy, criteriaBuilder, root);
         criteriaQuery.orderBy(orderList);
 
+        queryShapeStats.record(getQueryShape("search", orderBy != null ? orderBy : getDefaultOrderBy()));
+
         TypedQuery<T> search = getEntityManager().createQuery(criteriaQuery);
         return search;
     }
 
     protected List<Order> sort(String orderBy, CriteriaBuilder criteriaBuilder, Root<T> routeRoot) {
+        return toOrderList(getSortKeys(orderBy), criteriaBuilder, routeRoot);
+    }
+
+    protected List<Order> toOrderList(List<SortKey> sortKeys, CriteriaBuilder criteriaBuilder, Root<T> routeRoot) {
         List<Order> orderList = new ArrayList<>();
+        for (SortKey sortKey : sortKeys) {
+            if (sortKey.isAscending()) {
+                orderList.add(criteriaBuilder.asc(routeRoot.get(sortKey.getProperty())));
+            }
+            else {
+                orderList.add(criteriaBuilder.desc(routeRoot.get(sortKey.getProperty())));
+            }
+        }
+        return orderList;
+    }
+
+    protected List<SortKey> getSortKeys(String orderBy) {
+        List<SortKey> sortKeys = new ArrayList<>();
 
         List<String> orderByExpresions;
         if (orderBy != null){
@@ -115,14 +942,22 @@ public abstract class BaseApi<T> extends FilterBuilder<T>{
         for (String orderByExpresion : orderByExpresions){
             if (orderByExpresion.contains(ORDER_BY_ASC)){
                 String property = orderByExpresion.replace(ORDER_BY_ASC, "").trim();
-                orderList.add(criteriaBuilder.asc(routeRoot.get(property)));
+                sortKeys.add(new SortKey(property, true));
             }
             else if(orderByExpresion.contains(ORDER_BY_DESC)){
                 String property = orderByExpresion.replace(ORDER_BY_DESC, "").trim();
-                orderList.add(criteriaBuilder.desc(routeRoot.get(property)));
+                sortKeys.add(new SortKey(property, false));
             }
         }
-        return orderList;
+
+        // rows with equal sort values are ordered by id, so pages are stable between requests
+        String idAttributeName = getIdAttributeName();
+        boolean sortedById = sortKeys.stream()
+                .anyMatch(sortKey -> sortKey.getProperty().equals(idAttributeName));
+        if (!sortedById) {
+            sortKeys.add(new SortKey(idAttributeName, true));
+        }
+        return sortKeys;
     }
 
     protected List<Predicate> getFilters(CriteriaBuilder criteriaBuilder, Root<T> root) {
@@ -131,58 +966,790 @@ public abstract class BaseApi<T> extends FilterBuilder<T>{
     protected abstract String getDefaultOrderBy();
 
     @PostMapping
-    @Transactional
+    @Transactional(rollbackFor = Exception.class)
     public ResponseEntity<T> persist(@RequestBody T object) throws Exception {
+        // a retried request is answered with the stored response, and isn't executed again
+        String idempotencyKey = ui.getHeader(IdempotencyStore.KEY_HEADER);
+        String scopedKey = null;
+        String requestHash = null;
+        if (idempotencyKey != null) {
+            scopedKey = idempotencyStore.toScopedKey(getEntityClass(), idempotencyKey);
+            requestHash = IdempotencyStore.hash(objectMapper.writeValueAsBytes(object));
+            IdempotencyRecord record = idempotencyStore.find(scopedKey);
+            if (record != null) {
+                throw new IdempotentReplayException(scopedKey, requestHash, record);
+            }
+        }
+
         prePersist(object);
         entityManager.persist(object);
+        postPersist(object);
+        if (scopedKey != null) {
+            idempotencyStore.save(scopedKey, requestHash, HttpStatus.OK.value(), objectMapper.writeValueAsString(object));
+        }
+        Object id = getIdOf(object);
+        addExistingId(id);
+        afterCommit(() -> {
+            addExistingId(id);
+            onEntitiesChanged();
+            onEntityWritten(object);
+        });
         return ResponseEntity.ok(object);
     }
 
     protected void prePersist(T object) throws Exception{
     }
 
+    // runs in the transaction of persist, once the id of the object is generated
+    protected void postPersist(T object) throws Exception{
+    }
+
+    // runs on the entity with a merge patch applied, before it's written, with the checks of a created entity by default
+    protected void validatePatch(T patched, Map<String, Object> values) throws Exception {
+        prePersist(patched);
+    }
+
+    /**
+     * Creates every row of a JSON array or NDJSON body in one transaction, with the inserts flushed
+     * in JDBC batches. Rows rejected by prePersist, or NDJSON lines that aren't valid JSON, are
+     * reported in the response and skipped, while database errors roll back the whole request.
+     */
+    @PostMapping(value = "/_bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @Transactional(rollbackFor = Exception.class)
+    public ResponseEntity<List<BulkItemResult>> persistBulk(HttpServletRequest request) throws Exception {
+        ObjectReader reader = objectMapper.readerFor(getEntityClass());
+        List<T> persisted = new ArrayList<>();
+        List<BulkItemResult> results = new ArrayList<>();
+
+        String contentType = request.getContentType();
+        if (contentType != null && MediaType.APPLICATION_NDJSON.isCompatibleWith(MediaType.parseMediaType(contentType))) {
+            BufferedReader lines = new BufferedReader(new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8));
+            String line;
+            while ((line = lines.readLine()) != null) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                T object;
+                try {
+                    object = reader.readValue(line);
+                } catch (JsonProcessingException e) {
+                    checkBulkSize(results.size());
+                    results.add(BulkItemResult.rejected(results.size(), "Row is not valid JSON: " + e.getOriginalMessage()));
+                    continue;
+                }
+                persistBulkRow(object, persisted, results);
+            }
+        } else {
+            try (MappingIterator<T> rows = reader.readValues(request.getInputStream())) {
+                while (rows.hasNextValue()) {
+                    persistBulkRow(rows.nextValue(), persisted, results);
+                }
+            } catch (JsonProcessingException e) {
+                throw new InvalidParameterException("Body is not a valid JSON array: " + e.getOriginalMessage(), e);
+            }
+        }
+
+        for (T object : persisted) {
+            addExistingId(getIdOf(object));
+        }
+        afterCommit(() -> {
+            for (T object : persisted) {
+                addExistingId(getIdOf(object));
+                onEntityWritten(object);
+            }
+            onEntitiesChanged();
+        });
+
+        return ResponseEntity.ok()
+                .header("created", String.valueOf(persisted.size()))
+                .header("rejected", String.valueOf(results.size() - persisted.size()))
+                .body(results);
+    }
+
+    private void persistBulkRow(T object, List<T> persisted, List<BulkItemResult> results) {
+        int index = results.size();
+        checkBulkSize(index);
+        try {
+            prePersist(object);
+        } catch (Exception e) {
+            results.add(BulkItemResult.rejected(index, e.getMessage()));
+            return;
+        }
+
+        entityManager.persist(object);
+        persisted.add(object);
+        results.add(BulkItemResult.created(index, getIdOf(object)));
+
+        // keeps the persistence context small, the flushed inserts are sent as JDBC batches
+        if (persisted.size() % bulkFlushInterval == 0) {
+            entityManager.flush();
+            entityManager.clear();
+        }
+    }
+
+    /**
+     * Creates an entity of every data row read from a file whose first row is the header.
+     * Rows are pushed by the source one at a time and inserted in transactions of api.import.chunk-size
+     * rows, flushed in JDBC batches of api.import.batch-size, so the file is never held in memory.
+     * Rows rejected by the mapper or by prePersist are reported and skipped. Any other error stops the
+     * import, while the chunks committed before it stay imported.
+     */
+    protected ImportReport importRows(ImportRow.Source source, Set<String> requiredColumns, ImportRow.Mapper<T> mapper) throws Exception {
+        RowImport rowImport = new RowImport(requiredColumns, mapper);
+        try {
+            source.readRows(rowImport);
+            rowImport.commit();
+        } catch (Exception e) {
+            rowImport.rollback();
+            // nothing was written when the header itself is rejected
+            if (rowImport.columns == null) {
+                throw e;
+            }
+            String message = String.format("Import stopped at line %d after %d rows were imported: %s",
+                    rowImport.line, rowImport.report.getImported(), e.getMessage());
+            throw new InvalidParameterException(message, e);
+        } finally {
+            if (rowImport.report.getImported() > 0) {
+                onEntitiesChanged();
+                onBulkWrite();
+            }
+        }
+
+        if (rowImport.columns == null) {
+            throw new InvalidParameterException("Imported file is empty!");
+        }
+        return rowImport.report;
+    }
+
+    protected ImportReport importCsv(HttpServletRequest request, Set<String> requiredColumns, ImportRow.Mapper<T> mapper) throws Exception {
+        try (Reader reader = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8)) {
+            return importRows(rows -> CsvUtils.readRows(reader).forEachRemaining(rows), requiredColumns, mapper);
+        }
+    }
+
+    // the zip directory of a workbook is at its end, so the body is spooled to a file that is read in place
+    protected ImportReport importXlsx(HttpServletRequest request, Set<String> requiredColumns, ImportRow.Mapper<T> mapper) throws Exception {
+        File file = Files.createTempFile("import", ".xlsx").toFile();
+        try {
+            try (InputStream body = request.getInputStream()) {
+                Files.copy(body, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return importRows(rows -> XlsxUtils.readRows(file, rows), requiredColumns, mapper);
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private class RowImport implements Consumer<String[]> {
+
+        private final Set<String> requiredColumns;
+        private final ImportRow.Mapper<T> mapper;
+        private final ImportReport report = new ImportReport(importMaxRejectedLines);
+        private Map<String, Integer> columns;
+        private int line;
+        private TransactionStatus transaction;
+        private int persisted;
+
+        private RowImport(Set<String> requiredColumns, ImportRow.Mapper<T> mapper) {
+            this.requiredColumns = requiredColumns;
+            this.mapper = mapper;
+        }
+
+        @Override
+        public void accept(String[] values) {
+            line++;
+            if (columns == null) {
+                columns = ImportRow.toColumns(values, requiredColumns);
+                return;
+            }
+            ImportRow row = new ImportRow(line, columns, values);
+            if (row.isBlank()) {
+                return;
+            }
+
+            T object;
+            try {
+                object = mapper.toEntity(row);
+                prePersist(object);
+            } catch (Exception e) {
+                report.addRejected(line, e.getMessage());
+                return;
+            }
+
+            if (transaction == null) {
+                transaction = transactionManager.getTransaction(TransactionDefinition.withDefaults());
+                entityManager.unwrap(Session.class).setJdbcBatchSize(importBatchSize);
+            }
+            entityManager.persist(object);
+            addExistingId(getIdOf(object));
+            persisted++;
+
+            if (persisted % importBatchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+            if (persisted >= importChunkSize) {
+                commit();
+            }
+        }
+
+        private void commit() {
+            if (transaction == null) {
+                return;
+            }
+            TransactionStatus committed = transaction;
+            transaction = null;
+            transactionManager.commit(committed);
+            report.addImported(persisted);
+            persisted = 0;
+        }
+
+        private void rollback() {
+            if (transaction == null) {
+                return;
+            }
+            TransactionStatus rolledBack = transaction;
+            transaction = null;
+            persisted = 0;
+            transactionManager.rollback(rolledBack);
+        }
+    }
+
+    private void checkBulkSize(int index) {
+        if (index >= bulkMaxRows) {
+            String message = String.format("Bulk requests are limited to %d rows!", bulkMaxRows);
+            throw new InvalidParameterException(message);
+        }
+    }
+
     @GetMapping("/{id}")
     @Transactional
-    public ResponseEntity<T> fetch(@PathVariable String id){
+    public ResponseEntity<?> fetch(@PathVariable String id, @RequestParam(value = "fields", required = false) String fields){
 
         if (id == null || id.isBlank()){
             throw new IdMissingException();
         }
 
-        T t = getTByIdOrThrowException(id);
+        if (!mightExist(id)) {
+            throw entityWithIdNotFound(id);
+        }
+
+        List<String> fieldList = getFields(fields);
+        if (fieldList != null) {
+            return ResponseEntity.ok(getProjectionByIdOrThrowException(id, fieldList));
+        }
+
+        T t = getCachedTByIdOrThrowException(id);
 
         return ResponseEntity.ok(t);
     }
 
+    @GetMapping("/_aggregate")
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<Map<String, Object>>> aggregate(
+            @RequestParam(value = "groupBy", required = false) String groupBy,
+            @RequestParam(value = "sum", required = false) String sum,
+            @RequestParam(value = "avg", required = false) String avg,
+            @RequestParam(value = "min", required = false) String min,
+            @RequestParam(value = "max", required = false) String max
+    ) {
+
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+
+        Root<T> root = criteriaQuery.from(getEntityClass());
+
+        List<String> names = new ArrayList<>();
+        List<Selection<?>> selections = new ArrayList<>();
+
+        List<String> groupByFields = groupBy != null ? getFields(groupBy) : Collections.emptyList();
+        List<Expression<?>> groupByPaths = new ArrayList<>();
+        for (String field : groupByFields) {
+            Path<Object> path = root.get(field);
+            groupByPaths.add(path);
+            names.add(field);
+            selections.add(path);
+        }
+
+        for (String expression : toExpressionList(sum)) {
+            names.add("sum(" + expression + ")");
+            selections.add(criteriaBuilder.sum(toNumericExpression(expression, criteriaBuilder, root)));
+        }
+        for (String expression : toExpressionList(avg)) {
+            names.add("avg(" + expression + ")");
+            selections.add(criteriaBuilder.avg(toNumericExpression(expression, criteriaBuilder, root)));
+        }
+        for (String expression : toExpressionList(min)) {
+            names.add("min(" + expression + ")");
+            selections.add(criteriaBuilder.least(toComparableExpression(expression, criteriaBuilder, root)));
+        }
+        for (String expression : toExpressionList(max)) {
+            names.add("max(" + expression + ")");
+            selections.add(criteriaBuilder.greatest(toComparableExpression(expression, criteriaBuilder, root)));
+        }
+        if (ui.getParameterMap().containsKey("count") || selections.size() == groupByPaths.size()) {
+            names.add("count");
+            selections.add(criteriaBuilder.count(root));
+        }
+
+        criteriaQuery.multiselect(selections);
+
+        List<Predicate> predicates = getFilters(criteriaBuilder, root);
+        criteriaQuery.where(predicates.toArray(new Predicate[0]));
+
+        criteriaQuery.groupBy(groupByPaths);
+        criteriaQuery.orderBy(groupByPaths.stream().map(criteriaBuilder::asc).collect(Collectors.toList()));
+
+        queryShapeStats.record(getQueryShape("aggregate" + names, ""));
+
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (Tuple tuple : entityManager.createQuery(criteriaQuery).getResultList()) {
+            Map<String, Object> row = new LinkedHashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                row.put(names.get(i), tuple.get(i));
+            }
+            rows.add(row);
+        }
+        return ResponseEntity.ok(rows);
+    }
+
+    private List<String> toExpressionList(String expressions) {
+        if (expressions == null || expressions.isBlank()) {
+            return Collections.emptyList();
+        }
+        return fromValueToList(expressions).stream()
+                .map(expression -> expression.replace(" ", ""))
+                .collect(Collectors.toList());
+    }
+
+    // a product of numeric fields, e.g. quantity*unitPrice
+    private Expression<Number> toNumericExpression(String expression, CriteriaBuilder criteriaBuilder, Root<T> root) {
+        Expression<Number> result = null;
+        for (String factor : expression.split("\\*")) {
+            String field = toAggregateField(factor);
+            Path<Number> path = root.get(field);
+            Class<?> javaType = path.getJavaType();
+            boolean numeric = Number.class.isAssignableFrom(javaType) || (javaType.isPrimitive() && javaType != boolean.class && javaType != char.class);
+            if (!numeric) {
+                String message = String.format("%s of %s is not a numeric field!", field, getEntityClass().getSimpleName());
+                throw new InvalidParameterException(message);
+            }
+            result = result == null ? path : criteriaBuilder.prod(result, path);
+        }
+        return result;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Expression<Comparable> toComparableExpression(String expression, CriteriaBuilder criteriaBuilder, Root<T> root) {
+        if (expression.contains("*")) {
+            return (Expression) toNumericExpression(expression, criteriaBuilder, root);
+        }
+        return root.get(toAggregateField(expression));
+    }
+
+    private String toAggregateField(String field) {
+        if (field.isBlank()) {
+            throw new InvalidParameterException("Aggregate expression has an empty field!");
+        }
+        return getFields(field).get(0);
+    }
+
+    @GetMapping("/_mget")
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<MultiGetItem>> multiGet(@RequestParam(value = "ids") String ids) {
+        return ResponseEntity.ok(getMultiGetItems(fromValueToList(ids)));
+    }
+
+    @PostMapping("/_mget")
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<MultiGetItem>> multiGetByBody(@RequestBody List<String> ids) {
+        return ResponseEntity.ok(getMultiGetItems(ids));
+    }
+
+    // answers in request order, caches and the negative lookup filter are asked before the database
+    protected List<MultiGetItem> getMultiGetItems(List<String> ids) {
+        if (ids.size() > multiGetMaxIds) {
+            String message = String.format("At most %d ids can be fetched in one request!", multiGetMaxIds);
+            throw new InvalidParameterException(message);
+        }
+
+        Map<String, T> found = new HashMap<>();
+        List<String> toLoad = new ArrayList<>();
+        for (String id : new LinkedHashSet<>(ids)) {
+            if (id.isBlank() || !mightExist(id)) {
+                continue;
+            }
+            T cached = entityCache != null ? entityCache.get(id) : null;
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                toLoad.add(id);
+            }
+        }
+
+        long generation = entityCache != null ? entityCache.getGeneration() : 0;
+        for (int from = 0; from < toLoad.size(); from += multiGetChunkSize) {
+            List<String> chunk = toLoad.subList(from, Math.min(from + multiGetChunkSize, toLoad.size()));
+            for (T t : getByIds(chunk)) {
+                String id = getIdOf(t).toString();
+                found.put(id, t);
+                if (entityCache != null) {
+                    entityCache.put(id, t, generation);
+                }
+            }
+        }
+
+        List<MultiGetItem> items = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            items.add(new MultiGetItem(id, found.get(id)));
+        }
+        return items;
+    }
+
+    protected List<T> getByIds(List<String> ids) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(getEntityClass());
+
+        Root<T> root = criteriaQuery.from(getEntityClass());
+        criteriaQuery.select(root);
+        criteriaQuery.where(root.get(getIdAttributeName()).in(ids));
+
+        return entityManager.createQuery(criteriaQuery).getResultList();
+    }
+
+    // the cached instances are detached, so write paths keep using getTByIdOrThrowException
+    protected T getCachedTByIdOrThrowException(String id) {
+        if (entityCache == null) {
+            return getTByIdOrThrowException(id);
+        }
+
+        T cached = entityCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+
+        long generation = entityCache.getGeneration();
+        T t = getTByIdOrThrowException(id);
+        entityCache.put(id, t, generation);
+        return t;
+    }
+
     protected T getTByIdOrThrowException(String id) {
         T t = entityManager.find(getEntityClass(), id);
 
         if (t == null){
-
-            String classSimpleName = getEntityClass().getSimpleName();
-            String entityNameAsWords = StringUtil.fromCamelCaseToSeparatedWordsWhenFirstWordStartsWithCapitalLetter(classSimpleName);
-
-            throw new EntityWithIdNotFoundException(String.format("%s with id [%s] doesn't exist in database!", entityNameAsWords, id));
+            throw entityWithIdNotFound(id);
         }
         return t;
     }
 
+    protected Map<String, Object> getProjectionByIdOrThrowException(String id, List<String> fields) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+
+        Root<T> root = criteriaQuery.from(getEntityClass());
+        criteriaQuery.multiselect(toSelections(fields, root));
+        criteriaQuery.where(criteriaBuilder.equal(root.get(getIdAttributeName()), id));
+
+        return entityManager.createQuery(criteriaQuery)
+                .getResultStream()
+                .findFirst()
+                .map(this::toRow)
+                .orElseThrow(() -> entityWithIdNotFound(id));
+    }
+
+    protected EntityWithIdNotFoundException entityWithIdNotFound(String id) {
+        return new EntityWithIdNotFoundException(entityDisplayName + " with id [" + id + "] doesn't exist in database!");
+    }
+
     @PutMapping("/{id}")
     @Transactional
     public ResponseEntity<T> update(@PathVariable String id, @RequestBody T object){
-        entityManager.merge(object);
+        Object objectId = getIdOf(object);
+        if (objectId != null && !objectId.toString().equals(id)) {
+            String message = String.format("Id [%s] of the body doesn't match the id [%s] of the path!", objectId, id);
+            throw new InvalidParameterException(message);
+        }
+        T written = object;
+        // merge selects the row before updating it, it is only needed when the row might be missing
+        if (objectId == null || !isUpdateByIdSupported() || !mightExist(objectId.toString()) || updateById(objectId, object) == 0) {
+            written = entityManager.merge(object);
+        }
+
+        T writtenObject = written;
+        Object writtenId = getIdOf(writtenObject);
+        addExistingId(writtenId);
+        // a body without an id is merged as a new row, whose id isn't the one of the path
+        afterCommit(() -> {
+            addExistingId(writtenId);
+            onEntityChanged(writtenId.toString());
+            onEntityWritten(writtenObject);
+        });
         return ResponseEntity.ok(object);
     }
 
+    /**
+     * Applies a JSON Merge Patch to the entity with a single UPDATE of the patched columns only,
+     * a null member clears its column. The patch is applied to a detached copy of the entity first,
+     * which validatePatch checks, so nothing is returned.
+     */
+    @PatchMapping(value = "/{id}", consumes = {MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE})
+    @Transactional(rollbackFor = Exception.class)
+    public ResponseEntity<T> patch(@PathVariable String id, @RequestBody Map<String, Object> patch) throws Exception {
+        if (patch == null || patch.isEmpty()) {
+            throw new InvalidParameterException("At least one field to update is required!");
+        }
+        if (!mightExist(id)) {
+            throw entityWithIdNotFound(id);
+        }
+
+        T patched = entityManager.find(getEntityClass(), id);
+        if (patched == null) {
+            throw entityWithIdNotFound(id);
+        }
+        // the UPDATE below writes the patched columns only, dirty checking mustn't write the whole row
+        entityManager.detach(patched);
+
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        CriteriaUpdate<T> criteriaUpdate = criteriaBuilder.createCriteriaUpdate(getEntityClass());
+
+        Root<T> root = criteriaUpdate.from(getEntityClass());
+        BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(patched);
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> member : patch.entrySet()) {
+            Object value = toAttributeValue(member.getKey(), member.getValue());
+            values.put(member.getKey(), value);
+            beanWrapper.setPropertyValue(member.getKey(), value);
+            criteriaUpdate.set(member.getKey(), value);
+        }
+        validatePatch(patched, values);
+        criteriaUpdate.where(criteriaBuilder.equal(root.get(getIdAttributeName()), id));
+
+        if (entityManager.createQuery(criteriaUpdate).executeUpdate() == 0) {
+            throw entityWithIdNotFound(id);
+        }
+
+        afterCommit(() -> {
+            onEntityChanged(id);
+            onEntityPatched(id, values);
+        });
+        return ResponseEntity.noContent().build();
+    }
+
+    // every column of the row in a single UPDATE, returns the number of updated rows
+    private int updateById(Object id, T object) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        CriteriaUpdate<T> criteriaUpdate = criteriaBuilder.createCriteriaUpdate(getEntityClass());
+
+        Root<T> root = criteriaUpdate.from(getEntityClass());
+
+        BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(object);
+        for (SingularAttribute<? super T, ?> attribute : entityManager.getMetamodel().entity(getEntityClass()).getSingularAttributes()) {
+            if (attribute.isId()) {
+                continue;
+            }
+            criteriaUpdate.set(attribute.getName(), beanWrapper.getPropertyValue(attribute.getName()));
+        }
+        criteriaUpdate.where(criteriaBuilder.equal(root.get(getIdAttributeName()), id));
+
+        return entityManager.createQuery(criteriaUpdate).executeUpdate();
+    }
+
+    // an UPDATE statement can't write associations or check versions, those entities are merged
+    private boolean isUpdateByIdSupported() {
+        if (updateByIdSupported == null) {
+            EntityType<T> entityType = entityManager.getMetamodel().entity(getEntityClass());
+            updateByIdSupported = entityType.hasSingleIdAttribute()
+                    && !entityType.hasVersionAttribute()
+                    && entityType.getPluralAttributes().isEmpty()
+                    && entityType.getSingularAttributes().stream()
+                    .allMatch(attribute -> attribute.getPersistentAttributeType() == Attribute.PersistentAttributeType.BASIC);
+        }
+        return updateByIdSupported;
+    }
+
     @DeleteMapping("/{id}")
     @Transactional
     public ResponseEntity<T> delete(@PathVariable String id){
 
-        T t = getTByIdOrThrowException(id);
-        toDelete(t);
+        if (!mightExist(id)) {
+            throw entityWithIdNotFound(id);
+        }
+
+        if (isLoadingDeleteRequired()) {
+            T t = getTByIdOrThrowException(id);
+            toDelete(t);
+        } else if (deleteById(id) == 0) {
+            throw entityWithIdNotFound(id);
+        }
+
+        afterCommit(() -> {
+            onEntityChanged(id);
+            onEntityRemoved(id);
+        });
         return ResponseEntity.noContent().build();
     }
 
+    private int deleteById(String id) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        CriteriaDelete<T> criteriaDelete = criteriaBuilder.createCriteriaDelete(getEntityClass());
+
+        Root<T> root = criteriaDelete.from(getEntityClass());
+        criteriaDelete.where(criteriaBuilder.equal(root.get(getIdAttributeName()), id));
+
+        return entityManager.createQuery(criteriaDelete).executeUpdate();
+    }
+
+    /**
+     * Whether delete loads the entity and passes it to {@link #toDelete}, instead of issuing a single
+     * DELETE by id. By default that is the case only for subclasses overriding toDelete.
+     */
+    protected boolean isLoadingDeleteRequired() {
+        if (loadingDeleteRequired == null) {
+            boolean overridden = false;
+            for (Class<?> type = getClass(); type != BaseApi.class && !overridden; type = type.getSuperclass()) {
+                overridden = Stream.of(type.getDeclaredMethods())
+                        .anyMatch(method -> method.getName().equals("toDelete") && method.getParameterCount() == 1);
+            }
+            loadingDeleteRequired = overridden;
+        }
+        return loadingDeleteRequired;
+    }
+
+    /**
+     * Deletes every row matching the filters of the request with a single DELETE statement.
+     * With dryRun=true only the number of matching rows is returned.
+     */
+    @DeleteMapping
+    @Transactional
+    public ResponseEntity<Map<String, Object>> deleteByFilters(@RequestParam(value = "dryRun", required = false) boolean dryRun) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        CriteriaDelete<T> criteriaDelete = criteriaBuilder.createCriteriaDelete(getEntityClass());
+
+        Root<T> root = criteriaDelete.from(getEntityClass());
+        criteriaDelete.where(getRequiredFilters(criteriaBuilder, root).toArray(new Predicate[0]));
+
+        if (dryRun) {
+            return toBulkWriteResult(count(), true);
+        }
+
+        int affected = entityManager.createQuery(criteriaDelete).executeUpdate();
+        afterCommit(() -> {
+            onEntitiesChanged();
+            onBulkWrite();
+        });
+        return toBulkWriteResult(affected, false);
+    }
+
+    /**
+     * Assigns the fields of the JSON object body to every row matching the filters of the request
+     * with a single UPDATE statement. Every matching row is checked by validatePatch with the
+     * assignments applied first, a rejected one fails the whole request before anything is written.
+     * With dryRun=true only the number of matching rows is returned.
+     */
+    @PatchMapping
+    @Transactional(rollbackFor = Exception.class)
+    public ResponseEntity<Map<String, Object>> updateByFilters(
+            @RequestParam(value = "dryRun", required = false) boolean dryRun,
+            @RequestBody Map<String, Object> assignments
+    ) throws Exception {
+        if (assignments == null || assignments.isEmpty()) {
+            throw new InvalidParameterException("At least one field to update is required!");
+        }
+
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        CriteriaUpdate<T> criteriaUpdate = criteriaBuilder.createCriteriaUpdate(getEntityClass());
+
+        Root<T> root = criteriaUpdate.from(getEntityClass());
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Object> assignment : assignments.entrySet()) {
+            Object value = toAttributeValue(assignment.getKey(), assignment.getValue());
+            values.put(assignment.getKey(), value);
+            criteriaUpdate.set(assignment.getKey(), value);
+        }
+        criteriaUpdate.where(getRequiredFilters(criteriaBuilder, root).toArray(new Predicate[0]));
+        validateAssignments(values);
+
+        if (dryRun) {
+            return toBulkWriteResult(count(), true);
+        }
+
+        int affected = entityManager.createQuery(criteriaUpdate).executeUpdate();
+        afterCommit(() -> {
+            onEntitiesChanged();
+            onBulkWrite();
+        });
+        return toBulkWriteResult(affected, false);
+    }
+
+    // the rows are streamed and detached one by one, the assignments mustn't be written by dirty checking
+    private void validateAssignments(Map<String, Object> values) throws Exception {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+
+        CriteriaQuery<T> criteriaQuery = criteriaBuilder.createQuery(getEntityClass());
+
+        Root<T> root = criteriaQuery.from(getEntityClass());
+        criteriaQuery.where(getRequiredFilters(criteriaBuilder, root).toArray(new Predicate[0]));
+
+        try (Stream<T> rows = entityManager.createQuery(criteriaQuery).getResultStream()) {
+            Iterator<T> iterator = rows.iterator();
+            while (iterator.hasNext()) {
+                T patched = iterator.next();
+                entityManager.detach(patched);
+                BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(patched);
+                for (Map.Entry<String, Object> value : values.entrySet()) {
+                    beanWrapper.setPropertyValue(value.getKey(), value.getValue());
+                }
+                validatePatch(patched, values);
+            }
+        }
+    }
+
+    // a statement without filters would write the whole table, that is never what a bulk request wants
+    private List<Predicate> getRequiredFilters(CriteriaBuilder criteriaBuilder, Root<T> root) {
+        List<Predicate> predicates = getFilters(criteriaBuilder, root);
+        if (predicates.isEmpty()) {
+            String message = String.format("At least one filter is required to write %s rows in bulk!", getEntityClass().getSimpleName());
+            throw new InvalidParameterException(message);
+        }
+        return predicates;
+    }
+
+    private Object toAttributeValue(String field, Object value) {
+        if (field.equals(getIdAttributeName())) {
+            String message = String.format("%s of %s can't be updated!", field, getEntityClass().getSimpleName());
+            throw new InvalidParameterException(message);
+        }
+        Class<?> javaType = entityManager.getMetamodel().entity(getEntityClass())
+                .getSingularAttribute(getFields(field).get(0))
+                .getJavaType();
+        if (value == null && javaType.isPrimitive()) {
+            String message = String.format("%s of %s can't be null!", field, getEntityClass().getSimpleName());
+            throw new InvalidParameterException(message);
+        }
+        try {
+            return objectMapper.convertValue(value, javaType);
+        } catch (IllegalArgumentException e) {
+            String message = String.format("%s is not a valid value of %s!", value, field);
+            throw new InvalidParameterException(message, e);
+        }
+    }
+
+    private ResponseEntity<Map<String, Object>> toBulkWriteResult(long affected, boolean dryRun) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("affected", affected);
+        result.put("dryRun", dryRun);
+        return ResponseEntity.ok(result);
+    }
+
     protected void toDelete(T t) {
         entityManager.remove(t);
     }
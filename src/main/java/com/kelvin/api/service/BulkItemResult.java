@@ -0,0 +1,46 @@
+package com.kelvin.api.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+public class BulkItemResult {
+
+    private final int index;
+    private final boolean created;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final String id;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final String error;
+
+    private BulkItemResult(int index, boolean created, String id, String error) {
+        this.index = index;
+        this.created = created;
+        this.id = id;
+        this.error = error;
+    }
+
+    public static BulkItemResult created(int index, Object id) {
+        return new BulkItemResult(index, true, String.valueOf(id), null);
+    }
+
+    public static BulkItemResult rejected(int index, String error) {
+        return new BulkItemResult(index, false, null, error);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,24 @@
+package com.kelvin.api.service;
+
+import com.kelvin.smartwarehouse.exception.InvalidParameterException;
+
+public enum CountMode {
+    EXACT,
+    CACHED,
+    ESTIMATED,
+    NONE;
+
+    public static CountMode fromValue(String value) {
+        for (CountMode countMode : values()) {
+            if (countMode.getValue().equals(value)) {
+                return countMode;
+            }
+        }
+        String message = String.format("%s count mode is not supported, use one of exact, cached, estimated or none.", value);
+        throw new InvalidParameterException(message);
+    }
+
+    public String getValue() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,23 @@
+package com.kelvin.api.service;
+
+/**
+ * Published by code writing entities outside of their api, so that the api drops what it cached of them.
+ */
+public class EntityChangedEvent {
+
+    private final Class<?> entityClass;
+    private final String id;
+
+    public EntityChangedEvent(Class<?> entityClass, String id) {
+        this.entityClass = entityClass;
+        this.id = id;
+    }
+
+    public Class<?> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,133 @@
+package com.kelvin.api.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel of keyed timeouts. Scheduling and cancelling are O(1) and never block, a
+ * single worker thread advances the wheel one bucket per tick and hands expired keys to the
+ * executor, so expiries are late by at most one tick and millions of pending keys cost no polling.
+ */
+public class HashedTimingWheel<K> implements AutoCloseable {
+
+    private final long tickMillis;
+    private final List<List<Timeout<K>>> wheel;
+    private final Queue<Timeout<K>> scheduled = new ConcurrentLinkedQueue<>();
+    private final Map<K, Timeout<K>> timeouts = new ConcurrentHashMap<>();
+    private final Consumer<K> onExpiry;
+    private final Executor executor;
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick;
+
+    public HashedTimingWheel(String name, long tickMillis, int wheelSize, Consumer<K> onExpiry, Executor executor) {
+        this.tickMillis = tickMillis;
+        this.wheel = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        this.onExpiry = onExpiry;
+        this.executor = executor;
+        this.startTime = System.currentTimeMillis();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    // replaces the pending timeout of the key, if there is one
+    public void schedule(K key, long deadlineMillis) {
+        Timeout<K> timeout = new Timeout<>(key, deadlineMillis);
+        Timeout<K> previous = timeouts.put(key, timeout);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        scheduled.add(timeout);
+    }
+
+    public void cancel(K key) {
+        Timeout<K> timeout = timeouts.remove(key);
+        if (timeout != null) {
+            timeout.cancelled = true;
+        }
+    }
+
+    public boolean contains(K key) {
+        return timeouts.containsKey(key);
+    }
+
+    public int getSize() {
+        return timeouts.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long sleepMillis = startTime + (tick + 1) * tickMillis - System.currentTimeMillis();
+            if (sleepMillis > 0) {
+                try {
+                    Thread.sleep(sleepMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            transferScheduled();
+            expire((int) (tick % wheel.size()));
+            tick++;
+        }
+    }
+
+    // the bucket of tick t is expired at the end of it, so a deadline goes to the first tick ending after it
+    private void transferScheduled() {
+        Timeout<K> timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long deadlineTick = Math.max(tick, (timeout.deadlineMillis - startTime + tickMillis - 1) / tickMillis - 1);
+            timeout.remainingRounds = (deadlineTick - tick) / wheel.size();
+            wheel.get((int) (deadlineTick % wheel.size())).add(timeout);
+        }
+    }
+
+    private void expire(int index) {
+        List<Timeout<K>> pending = new ArrayList<>();
+        for (Timeout<K> timeout : wheel.get(index)) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                pending.add(timeout);
+            } else if (timeouts.remove(timeout.key, timeout)) {
+                executor.execute(() -> onExpiry.accept(timeout.key));
+            }
+        }
+        wheel.set(index, pending);
+    }
+
+    private static class Timeout<K> {
+
+        private final K key;
+        private final long deadlineMillis;
+        private volatile boolean cancelled;
+        private long remainingRounds;
+
+        private Timeout(K key, long deadlineMillis) {
+            this.key = key;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+}
@@ -3,8 +3,13 @@ package com.kelvin.api.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.context.request.WebRequest;
 
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -75,6 +80,30 @@ public abstract class HttpBase {
                 .collect(Collectors.toList());
     }
 
+    public String getActiveParameterNames(Set<String> excludedKeys) {
+        return ui.getParameterMap().keySet().stream()
+                .filter(key -> !excludedKeys.contains(key) && nn(key))
+                .sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    // only the first value of a parameter is read by get(), encoded so that no value can pass for a separator
+    public String getParameterSignature(Set<String> excludedKeys) {
+        Map<String, String[]> parameters = new TreeMap<>(ui.getParameterMap());
+        parameters.keySet().removeAll(excludedKeys);
+
+        StringBuilder stringBuilder = new StringBuilder();
+        parameters.forEach((key, values) -> {
+            stringBuilder.append(URLEncoder.encode(key, StandardCharsets.UTF_8));
+            stringBuilder.append("=");
+            if (values.length > 0 && values[0] != null) {
+                stringBuilder.append(URLEncoder.encode(values[0], StandardCharsets.UTF_8));
+            }
+            stringBuilder.append("&");
+        });
+        return stringBuilder.toString();
+    }
+
     public List<String> fromValueToList(String value) {
         return Stream.of(value.split(",", -1))
                 .collect(Collectors.toList());
@@ -0,0 +1,62 @@
+package com.kelvin.api.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of an import. Only the first rejected lines are listed, so that the report of a large
+ * file full of errors stays small, while the counts cover every line.
+ */
+public class ImportReport {
+
+    private final int maxRejectedLines;
+    private long imported;
+    private long rejected;
+    private final List<RejectedLine> rejectedLines = new ArrayList<>();
+
+    public ImportReport(int maxRejectedLines) {
+        this.maxRejectedLines = maxRejectedLines;
+    }
+
+    void addImported(long count) {
+        imported += count;
+    }
+
+    void addRejected(int line, String error) {
+        rejected++;
+        if (rejectedLines.size() < maxRejectedLines) {
+            rejectedLines.add(new RejectedLine(line, error));
+        }
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public List<RejectedLine> getRejectedLines() {
+        return rejectedLines;
+    }
+
+    public static class RejectedLine {
+
+        private final int line;
+        private final String error;
+
+        public RejectedLine(int line, String error) {
+            this.line = line;
+            this.error = error;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.kelvin.api.service;
+
+import com.kelvin.smartwarehouse.exception.InvalidParameterException;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * A data row of an imported file, whose values are read by the column names of its header row.
+ */
+public class ImportRow {
+
+    private final int line;
+    private final Map<String, Integer> columns;
+    private final String[] values;
+
+    public ImportRow(int line, Map<String, Integer> columns, String[] values) {
+        this.line = line;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * The index of every column of the header row, or an {@link InvalidParameterException} naming the
+     * required columns it lacks.
+     */
+    public static Map<String, Integer> toColumns(String[] header, Set<String> requiredColumns) {
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.length; i++) {
+            if (header[i] != null && !header[i].isBlank()) {
+                // a byte order mark is kept by readers of UTF-8 files
+                columns.putIfAbsent(header[i].replace("\uFEFF", "").trim(), i);
+            }
+        }
+        Set<String> missingColumns = new TreeSet<>(requiredColumns);
+        missingColumns.removeAll(columns.keySet());
+        if (!missingColumns.isEmpty()) {
+            String message = String.format("Imported file is missing the columns %s!", missingColumns);
+            throw new InvalidParameterException(message);
+        }
+        return columns;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    // the trimmed value of the column, or null when it's missing or blank
+    public String get(String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= values.length || values[index] == null) {
+            return null;
+        }
+        String value = values[index].trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    public boolean isBlank() {
+        for (String value : values) {
+            if (value != null && !value.isBlank()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // pushes the rows of a file, header first, to the consumer
+    @FunctionalInterface
+    public interface Source {
+
+        void readRows(Consumer<String[]> rows) throws Exception;
+    }
+
+    @FunctionalInterface
+    public interface Mapper<T> {
+
+        T toEntity(ImportRow row) throws Exception;
+    }
+}
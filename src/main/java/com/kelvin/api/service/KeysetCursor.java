@@ -0,0 +1,94 @@
+package com.kelvin.api.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kelvin.smartwarehouse.exception.InvalidParameterException;
+import org.springframework.beans.BeanWrapper;
+import org.springframework.beans.PropertyAccessorFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Opaque cursor for keyset (seek) pagination: the sort key values of the last row of a page,
+ * serialized as a JSON array and encoded as URL safe Base64. A null sort key value is kept as a JSON null,
+ * nulls sort after every other value in both directions.
+ */
+public class KeysetCursor {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    public static String encode(List<SortKey> sortKeys, Object lastRow) {
+        List<String> values = new ArrayList<>();
+        for (SortKey sortKey : sortKeys) {
+            Object value = getPropertyValue(lastRow, sortKey.getProperty());
+            if (value == null) {
+                values.add(null);
+            } else {
+                values.add(value instanceof Enum ? ((Enum<?>) value).name() : value.toString());
+            }
+        }
+
+        try {
+            byte[] json = objectMapper.writeValueAsBytes(values);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(json);
+        } catch (Exception e) {
+            throw new IllegalStateException("Cursor couldn't be encoded!", e);
+        }
+    }
+
+    private static Object getPropertyValue(Object row, String property) {
+        if (row instanceof Map) {
+            return ((Map<?, ?>) row).get(property);
+        }
+        BeanWrapper beanWrapper = PropertyAccessorFactory.forBeanPropertyAccess(row);
+        return beanWrapper.getPropertyValue(property);
+    }
+
+    public static List<String> decode(String cursor) {
+        try {
+            byte[] json = Base64.getUrlDecoder().decode(cursor.getBytes(StandardCharsets.US_ASCII));
+            return objectMapper.readValue(json, new TypeReference<List<String>>() {});
+        } catch (Exception e) {
+            throw new InvalidParameterException("Cursor is invalid!", e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static Comparable toValue(Class<?> javaType, String value) {
+        try {
+            if (value == null) {
+                return null;
+            }
+            if (javaType == String.class) {
+                return value;
+            }
+            if (javaType == Integer.class || javaType == int.class) {
+                return Integer.valueOf(value);
+            }
+            if (javaType == Long.class || javaType == long.class) {
+                return Long.valueOf(value);
+            }
+            if (javaType == Double.class || javaType == double.class) {
+                return Double.valueOf(value);
+            }
+            if (javaType == Boolean.class || javaType == boolean.class) {
+                return Boolean.valueOf(value);
+            }
+            if (javaType == LocalDate.class) {
+                return LocalDate.parse(value);
+            }
+            if (javaType.isEnum()) {
+                return Enum.valueOf((Class<? extends Enum>) javaType, value);
+            }
+        } catch (RuntimeException e) {
+            throw new InvalidParameterException("Cursor is invalid!", e);
+        }
+        String message = String.format("Cursor paging doesn't support sort properties of type %s!", javaType.getSimpleName());
+        throw new InvalidParameterException(message);
+    }
+}
@@ -0,0 +1,20 @@
+package com.kelvin.api.service;
+
+public class ListSize {
+
+    private final long value;
+    private final CountMode countMode;
+
+    public ListSize(long value, CountMode countMode) {
+        this.value = value;
+        this.countMode = countMode;
+    }
+
+    public long getValue() {
+        return value;
+    }
+
+    public CountMode getCountMode() {
+        return countMode;
+    }
+}
@@ -0,0 +1,30 @@
+package com.kelvin.api.service;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+public class MultiGetItem {
+
+    private final String id;
+    private final boolean found;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Object entity;
+
+    public MultiGetItem(String id, Object entity) {
+        this.id = id;
+        this.found = entity != null;
+        this.entity = entity;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public boolean isFound() {
+        return found;
+    }
+
+    public Object getEntity() {
+        return entity;
+    }
+}
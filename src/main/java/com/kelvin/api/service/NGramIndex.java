@@ -0,0 +1,95 @@
+package com.kelvin.api.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Thread safe inverted index from the lower cased trigrams of a string value to the ids holding it.
+ * {@link #candidates} narrows a LIKE pattern down to the ids that could match it, the pattern itself
+ * still has to be applied to them, so an index that holds stale values only costs extra candidates.
+ */
+public class NGramIndex {
+
+    private static final int N = 3;
+
+    private final Map<String, Set<String>> postings = new HashMap<>();
+    private final Map<String, String> values = new HashMap<>();
+
+    public synchronized void put(String id, String value) {
+        remove(id);
+        if (value == null) {
+            return;
+        }
+        values.put(id, value);
+        for (String gram : toGrams(value)) {
+            postings.computeIfAbsent(gram, key -> new HashSet<>()).add(id);
+        }
+    }
+
+    public synchronized void remove(String id) {
+        String value = values.remove(id);
+        if (value == null) {
+            return;
+        }
+        for (String gram : toGrams(value)) {
+            Set<String> ids = postings.get(gram);
+            if (ids != null && ids.remove(id) && ids.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    public synchronized int getSize() {
+        return values.size();
+    }
+
+    /**
+     * Ids whose value might match the given LIKE pattern, compared case insensitively, or null when
+     * the pattern has no literal run of at least three characters and the index can't narrow it down.
+     */
+    public synchronized Set<String> candidates(String likePattern) {
+        Set<String> grams = new HashSet<>();
+        for (String literal : likePattern.split("[%_\\\\]")) {
+            grams.addAll(toGrams(literal));
+        }
+        if (grams.isEmpty()) {
+            return null;
+        }
+
+        List<Set<String>> idSets = new ArrayList<>();
+        for (String gram : grams) {
+            Set<String> ids = postings.get(gram);
+            if (ids == null) {
+                return Collections.emptySet();
+            }
+            idSets.add(ids);
+        }
+        idSets.sort((a, b) -> Integer.compare(a.size(), b.size()));
+
+        Set<String> result = new LinkedHashSet<>(idSets.get(0));
+        for (int i = 1; i < idSets.size() && !result.isEmpty(); i++) {
+            result.retainAll(idSets.get(i));
+        }
+        return result;
+    }
+
+    // lower cases char by char, so that the grams of a substring are always grams of the whole value
+    private static Set<String> toGrams(String value) {
+        char[] chars = value.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
+        }
+
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + N <= chars.length; i++) {
+            grams.add(new String(chars, i, N));
+        }
+        return grams;
+    }
+}
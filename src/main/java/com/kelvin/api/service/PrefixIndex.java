@@ -0,0 +1,84 @@
+package com.kelvin.api.service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Sorted, incrementally updated index of normalized string values for prefix lookups.
+ * Values are kept ordered by their normalized form, so the first {@code limit} matches of a prefix
+ * are read from a single range of the map without scanning the rest of it.
+ */
+public class PrefixIndex {
+
+    private static final char SEPARATOR = '\u0000';
+
+    private final ConcurrentSkipListMap<String, Match> entries = new ConcurrentSkipListMap<>();
+    private final Map<String, String> keysById = new ConcurrentHashMap<>();
+
+    public synchronized void put(String id, String value) {
+        remove(id);
+        if (value == null) {
+            return;
+        }
+        // the id makes keys of equal values unique and orders them deterministically
+        String key = normalize(value) + SEPARATOR + id;
+        entries.put(key, new Match(id, value));
+        keysById.put(id, key);
+    }
+
+    public synchronized void remove(String id) {
+        String key = keysById.remove(id);
+        if (key != null) {
+            entries.remove(key);
+        }
+    }
+
+    public int getSize() {
+        return keysById.size();
+    }
+
+    public List<Match> find(String prefix, int limit) {
+        String from = normalize(prefix);
+        List<Match> matches = new ArrayList<>(Math.min(limit, 64));
+        for (Map.Entry<String, Match> entry : entries.tailMap(from).entrySet()) {
+            if (matches.size() >= limit || !entry.getKey().startsWith(from)) {
+                break;
+            }
+            matches.add(entry.getValue());
+        }
+        return matches;
+    }
+
+    // lower cased, without accents and with collapsed whitespace
+    public static String normalize(String value) {
+        String decomposed = Normalizer.normalize(value, Normalizer.Form.NFD);
+        return decomposed.replaceAll("\\p{M}", "")
+                .replaceAll("\\s+", " ")
+                .trim()
+                .toLowerCase(Locale.ROOT);
+    }
+
+    public static class Match {
+
+        private final String id;
+        private final String value;
+
+        public Match(String id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getValue() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.kelvin.api.service;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts how often the query shapes (query type, active filter keys and orderBy) of one entity repeat.
+ * With criteria literals bound as parameters every run of a shape renders the same JPQL, so a high
+ * repeat rate is what lets the Hibernate query plan cache work. Whether it actually hit is counted by
+ * Hibernate itself, see the planCache entry of the query stats endpoint.
+ */
+public class QueryShapeStats {
+
+    private final String entity;
+    private final int maxShapes;
+    private final Set<String> shapes = ConcurrentHashMap.newKeySet();
+    private final LongAdder repeats = new LongAdder();
+    private final LongAdder firstRuns = new LongAdder();
+
+    public QueryShapeStats(String entity, int maxShapes) {
+        this.entity = entity;
+        this.maxShapes = maxShapes;
+    }
+
+    public void record(String shape) {
+        if (shapes.contains(shape)) {
+            repeats.increment();
+            return;
+        }
+        firstRuns.increment();
+        if (shapes.size() < maxShapes) {
+            shapes.add(shape);
+        }
+    }
+
+    public String getEntity() {
+        return entity;
+    }
+
+    public Set<String> getShapes() {
+        return shapes;
+    }
+
+    public long getRepeats() {
+        return repeats.sum();
+    }
+
+    public long getFirstRuns() {
+        return firstRuns.sum();
+    }
+
+    public double getRepeatRate() {
+        long repeats = getRepeats();
+        long total = repeats + getFirstRuns();
+        return total == 0 ? 0 : (double) repeats / total;
+    }
+}
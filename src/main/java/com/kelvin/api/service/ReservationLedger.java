@@ -0,0 +1,137 @@
+package com.kelvin.api.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Combines concurrent reservations of the same keys into fewer conditional writes.
+ * Reservations are queued on a stripe chosen by key, and one waiting thread at a time drains the
+ * stripe and writes the summed quantity of every key at once. Only when a summed write fails are
+ * its reservations written one by one, so no reservation is granted that the store didn't accept.
+ */
+public class ReservationLedger {
+
+    /**
+     * Atomically takes the quantity from the key in its own transaction, returns false when the key
+     * doesn't hold enough of it or doesn't exist.
+     */
+    public interface Writer {
+        boolean reserve(String key, int quantity);
+    }
+
+    private static final int MAX_ROUNDS = 16;
+
+    private final Stripe[] stripes;
+    private final Writer writer;
+
+    public ReservationLedger(int stripeCount, Writer writer) {
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe();
+        }
+        this.writer = writer;
+    }
+
+    public boolean reserve(String key, int quantity) {
+        Stripe stripe = stripes[(key.hashCode() & Integer.MAX_VALUE) % stripes.length];
+        Reservation reservation = new Reservation(key, quantity);
+        synchronized (stripe) {
+            stripe.pending.add(reservation);
+        }
+
+        while (true) {
+            combine(stripe);
+            try {
+                return reservation.result.get(1, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // the combiner gave up its turn, or is still writing, try to take over
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Reservation was interrupted!", e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause()
+                        : new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    // writes queued reservations unless another thread already does, giving up the turn after a
+    // bounded number of rounds so that the combining thread can answer its own request
+    private void combine(Stripe stripe) {
+        List<Reservation> batch;
+        synchronized (stripe) {
+            if (stripe.combining || stripe.pending.isEmpty()) {
+                return;
+            }
+            stripe.combining = true;
+            batch = stripe.drain();
+        }
+
+        for (int round = 1; ; round++) {
+            try {
+                write(batch);
+            } catch (RuntimeException e) {
+                batch.forEach(reservation -> reservation.result.completeExceptionally(e));
+            }
+            synchronized (stripe) {
+                if (stripe.pending.isEmpty() || round >= MAX_ROUNDS) {
+                    stripe.combining = false;
+                    return;
+                }
+                batch = stripe.drain();
+            }
+        }
+    }
+
+    private void write(List<Reservation> batch) {
+        Map<String, List<Reservation>> reservationsByKey = new LinkedHashMap<>();
+        for (Reservation reservation : batch) {
+            reservationsByKey.computeIfAbsent(reservation.key, key -> new ArrayList<>()).add(reservation);
+        }
+
+        for (Map.Entry<String, List<Reservation>> entry : reservationsByKey.entrySet()) {
+            List<Reservation> reservations = entry.getValue();
+            long total = reservations.stream().mapToLong(reservation -> reservation.quantity).sum();
+            if (reservations.size() > 1 && total <= Integer.MAX_VALUE && writer.reserve(entry.getKey(), (int) total)) {
+                reservations.forEach(reservation -> reservation.result.complete(true));
+                continue;
+            }
+            for (Reservation reservation : reservations) {
+                if (!reservation.result.isDone()) {
+                    reservation.result.complete(writer.reserve(reservation.key, reservation.quantity));
+                }
+            }
+        }
+    }
+
+    private static class Stripe {
+
+        private List<Reservation> pending = new ArrayList<>();
+        private boolean combining;
+
+        private List<Reservation> drain() {
+            List<Reservation> drained = pending;
+            pending = new ArrayList<>();
+            return drained;
+        }
+    }
+
+    private static class Reservation {
+
+        private final String key;
+        private final int quantity;
+        private final CompletableFuture<Boolean> result = new CompletableFuture<>();
+
+        private Reservation(String key, int quantity) {
+            this.key = key;
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.kelvin.api.service;
+
+public class SortKey {
+
+    private final String property;
+    private final boolean ascending;
+
+    public SortKey(String property, boolean ascending) {
+        this.property = property;
+        this.ascending = ascending;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+
+    public boolean isAscending() {
+        return ascending;
+    }
+}
@@ -1,38 +1,157 @@
 package com.kelvin.smartwarehouse.api;
 
 import com.kelvin.api.service.BaseApi;
+import com.kelvin.api.service.ImportReport;
+import com.kelvin.api.service.ImportRow;
+import com.kelvin.api.service.NGramIndex;
+import com.kelvin.api.service.PrefixIndex;
+import com.kelvin.api.service.ReservationLedger;
+import com.kelvin.smartwarehouse.exception.InsufficientQuantityException;
 import com.kelvin.smartwarehouse.exception.InvalidParameterException;
 import com.kelvin.smartwarehouse.model.InventoryItem;
+import com.kelvin.smartwarehouse.service.CatalogSyncReport;
+import com.kelvin.smartwarehouse.service.InventoryCatalogSync;
+import com.kelvin.smartwarehouse.service.InventoryStock;
+import com.kelvin.smartwarehouse.utils.CsvUtils;
+import org.hibernate.jpa.QueryHints;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.annotation.PostConstruct;
+import javax.persistence.Tuple;
 import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
+import javax.servlet.http.HttpServletRequest;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import static com.kelvin.smartwarehouse.management.AppConstants.INVENTORY_ITEMS_URL;
+import static com.kelvin.smartwarehouse.management.AppConstants.XLSX_VALUE;
 
 @RestController
 @RequestMapping(INVENTORY_ITEMS_URL)
 public class InventoryItemApi extends BaseApi<InventoryItem> {
 
+    private static final Set<String> IMPORT_COLUMNS = Set.of("name", "quantity", "unitPrice", "packageVolume");
+
+    // the lower case accented letters of the Latin-1 and Latin Extended-A blocks, and the letters
+    // PrefixIndex.normalize strips them to, for the TRANSLATE of the suggest fallback
+    private static final String[] NAME_ACCENTS = buildNameAccents();
+
+    private volatile NGramIndex nameIndex;
+
+    private volatile PrefixIndex namePrefixIndex;
+
+    // guards the indexes being rebuilt, and the ids written while their snapshot is read
+    private final Object nameIndexLock = new Object();
+
+    private NGramIndex rebuildingNameIndex;
+
+    private PrefixIndex rebuildingNamePrefixIndex;
+
+    private Set<String> namesWrittenDuringRebuild;
+
+    private final AtomicInteger nameIndexesInvalidations = new AtomicInteger();
+
+    private volatile int nameIndexesBuiltFor = -1;
+
+    private volatile long nameIndexesBuiltAt;
+
+    private final AtomicBoolean nameIndexesRebuilding = new AtomicBoolean();
+
+    @Value("${api.name-index.enabled:false}")
+    boolean nameIndexEnabled;
+
+    @Value("${api.name-index.rebuild-millis:600000}")
+    long nameIndexRebuildMillis;
+
+    @Value("${api.name-index.max-candidates:1000}")
+    int nameIndexMaxCandidates;
+
+    @Value("${api.suggest.enabled:false}")
+    boolean suggestEnabled;
+
+    @Value("${api.suggest.default-limit:10}")
+    int suggestDefaultLimit;
+
+    @Value("${api.suggest.max-limit:50}")
+    int suggestMaxLimit;
+
+    @Value("${api.reservation.ledger.enabled:false}")
+    boolean reservationLedgerEnabled;
+
+    @Value("${api.reservation.ledger.stripes:64}")
+    int reservationLedgerStripes;
+
+    @Autowired
+    InventoryStock inventoryStock;
+
+    @Autowired
+    InventoryCatalogSync inventoryCatalogSync;
+
+    private ReservationLedger reservationLedger;
+
     public InventoryItemApi() {
         super(InventoryItem.class);
     }
 
+    @PostConstruct
+    void initReservationLedger() {
+        if (reservationLedgerEnabled) {
+            reservationLedger = new ReservationLedger(reservationLedgerStripes, inventoryStock::reserve);
+        }
+    }
+
     @Override
     protected String getDefaultOrderBy() {
         return "name asc";
     }
 
+    @Override
+    protected int getEntityCacheMaxSize() {
+        return 10000;
+    }
+
+    @Override
+    protected long getEntityCacheTtlMillis() {
+        return 60000;
+    }
+
     @Override
     protected List<Predicate> getFilters(CriteriaBuilder criteriaBuilder, Root<InventoryItem> root){
         List<Predicate> predicates = new ArrayList<>();
 
         if (nn("like.name")) {
-            predicates.add(criteriaBuilder.like(root.get("name"), likeParam("like.name")));
+            String pattern = likeParam("like.name");
+            addNameCandidatesFilter(pattern, criteriaBuilder, root, predicates);
+            predicates.add(criteriaBuilder.like(root.get("name"), pattern));
+        }
+        if (nn("ilike.name")) {
+            String pattern = likeParamToLowerCase("ilike.name");
+            addNameCandidatesFilter(pattern, criteriaBuilder, root, predicates);
+            predicates.add(criteriaBuilder.like(criteriaBuilder.lower(root.get("name")), pattern));
         }
 
         buildIntegerFieldFilters("quantity", criteriaBuilder, root, predicates);
@@ -49,6 +168,18 @@ public class InventoryItemApi extends BaseApi<InventoryItem> {
         if (inventoryItem.getQuantity() < 1){
             throw new InvalidParameterException("Inventory item quantity should be a positive number!");
         }
+        validatePriceAndVolume(inventoryItem);
+    }
+
+    // a catalog row may be out of stock, unlike an item created through the api
+    private static void validateSyncedItem(InventoryItem inventoryItem) {
+        if (inventoryItem.getQuantity() < 0){
+            throw new InvalidParameterException("Inventory item quantity should not be negative!");
+        }
+        validatePriceAndVolume(inventoryItem);
+    }
+
+    private static void validatePriceAndVolume(InventoryItem inventoryItem) {
         if (inventoryItem.getUnitPrice() < 1){
             throw new InvalidParameterException("Inventory item price per unit should be a positive number!");
         }
@@ -56,4 +187,314 @@ public class InventoryItemApi extends BaseApi<InventoryItem> {
             throw new InvalidParameterException("Inventory item volume per package should be a positive number!");
         }
     }
+
+    // narrows a leading wildcard LIKE down to the primary keys of the trigram index candidates. A row
+    // missing from the index is missing from the results too, so it's only used while it holds every
+    // write of this instance. Rows written by other instances or straight to the database show up on
+    // the next periodic rebuild only, which is why the index is off unless enabled.
+    private void addNameCandidatesFilter(String pattern, CriteriaBuilder criteriaBuilder, Root<InventoryItem> root, List<Predicate> predicates) {
+        if (!nameIndexEnabled) {
+            return;
+        }
+        NGramIndex index = getNameIndex();
+        // not built yet, or missing a bulk write it hasn't been rebuilt for
+        if (index == null || nameIndexesBuiltFor != nameIndexesInvalidations.get()) {
+            return;
+        }
+        Set<String> candidates = index.candidates(pattern);
+        if (candidates == null || candidates.size() > nameIndexMaxCandidates) {
+            return;
+        }
+        if (candidates.isEmpty()) {
+            predicates.add(criteriaBuilder.disjunction());
+            return;
+        }
+        predicates.add(root.get("uuid").in(candidates));
+    }
+
+    /**
+     * Takes the quantity from the stock of the item with one conditional UPDATE, so concurrent
+     * reservations can never take more than the item holds.
+     */
+    @PostMapping("/{id}/reserve")
+    public ResponseEntity<InventoryItem> reserve(@PathVariable String id, @RequestParam(value = "quantity", required = false) Integer quantity) {
+        int requested = toReservationQuantity(quantity);
+        if (!mightExist(id)) {
+            throw entityWithIdNotFound(id);
+        }
+
+        boolean reserved = reservationLedger != null
+                ? reservationLedger.reserve(id, requested)
+                : inventoryStock.reserve(id, requested);
+        if (!reserved) {
+            Integer available = inventoryStock.getAvailableQuantity(id);
+            if (available == null) {
+                throw entityWithIdNotFound(id);
+            }
+            String message = String.format("Inventory item with id [%s] has %d units available, %d were requested!", id, available, requested);
+            throw new InsufficientQuantityException(message);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * Gives reserved units back to the stock of the item, never more than its reservations took.
+     */
+    @PostMapping("/{id}/release")
+    public ResponseEntity<InventoryItem> release(@PathVariable String id, @RequestParam(value = "quantity", required = false) Integer quantity) {
+        int released = toReservationQuantity(quantity);
+        if (!mightExist(id)) {
+            throw entityWithIdNotFound(id);
+        }
+
+        if (!inventoryStock.release(id, released)) {
+            if (inventoryStock.getAvailableQuantity(id) == null) {
+                throw entityWithIdNotFound(id);
+            }
+            int reserved = inventoryStock.getReservedQuantity(id);
+            String message = String.format("Inventory item with id [%s] has %d units reserved, %d were released!", id, reserved, released);
+            throw new InsufficientQuantityException(message);
+        }
+        return ResponseEntity.noContent().build();
+    }
+
+    private int toReservationQuantity(Integer quantity) {
+        if (quantity == null || quantity < 1) {
+            throw new InvalidParameterException("Reserved quantity should be a positive number!");
+        }
+        return quantity;
+    }
+
+    /**
+     * Creates the inventory items of a csv or xlsx file with a header of name, quantity, unitPrice
+     * and packageVolume, read from the request body.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", XLSX_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<ImportReport> importInventoryItems(@RequestParam(defaultValue = "csv") String type, HttpServletRequest request) throws Exception {
+
+        ImportReport report;
+        if (type.equals("csv")) {
+            report = importCsv(request, IMPORT_COLUMNS, this::toInventoryItem);
+        }
+        else if (type.equals("xlsx")) {
+            report = importXlsx(request, IMPORT_COLUMNS, this::toInventoryItem);
+        }
+        else {
+            String message = String.format("%s type is not supported for the inventory items import.", type);
+            throw new InvalidParameterException(message);
+        }
+
+        return ResponseEntity.ok(report);
+    }
+
+    /**
+     * Syncs the inventory items with a full catalog csv read from the request body, only the new and
+     * changed rows are written, a quantity of 0 marks an item out of stock. Items missing from the csv
+     * are deleted only with deleteMissing=true.
+     */
+    @PostMapping(value = "/sync", consumes = {"text/csv", MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<CatalogSyncReport> syncInventoryItems(@RequestParam(defaultValue = "false") boolean deleteMissing, HttpServletRequest request) throws Exception {
+        CatalogSyncReport report;
+        try (Reader reader = new InputStreamReader(request.getInputStream(), StandardCharsets.UTF_8)) {
+            report = inventoryCatalogSync.sync(CsvUtils.readRows(reader), row -> {
+                InventoryItem inventoryItem = toInventoryItem(row);
+                validateSyncedItem(inventoryItem);
+                return inventoryItem;
+            }, deleteMissing);
+        }
+
+        if (report.getInserted() + report.getUpdated() + report.getDeleted() > 0) {
+            onEntitiesChanged();
+            onBulkWrite();
+        }
+        return ResponseEntity.ok(report);
+    }
+
+    private InventoryItem toInventoryItem(ImportRow row) {
+        InventoryItem inventoryItem = new InventoryItem();
+        inventoryItem.setName(row.get("name"));
+        try {
+            inventoryItem.setQuantity(row.get("quantity") != null ? Integer.parseInt(row.get("quantity")) : 0);
+            inventoryItem.setUnitPrice(row.get("unitPrice") != null ? Double.parseDouble(row.get("unitPrice")) : 0);
+            inventoryItem.setPackageVolume(row.get("packageVolume") != null ? Double.parseDouble(row.get("packageVolume")) : 0);
+        } catch (NumberFormatException e) {
+            throw new InvalidParameterException(String.format("Inventory item number is not valid: %s", e.getMessage()));
+        }
+        return inventoryItem;
+    }
+
+    @GetMapping("/suggest")
+    @Transactional(readOnly = true)
+    public ResponseEntity<List<Map<String, Object>>> suggest(
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestParam(value = "limit", required = false) Integer limit
+    ) {
+        if (prefix == null || prefix.isBlank()) {
+            throw new InvalidParameterException("Prefix is mandatory!");
+        }
+        int maxResults = Math.min(limit != null && limit > 0 ? limit : suggestDefaultLimit, suggestMaxLimit);
+
+        List<Map<String, Object>> suggestions = new ArrayList<>();
+        if (suggestEnabled) {
+            PrefixIndex prefixIndex = getNamePrefixIndex();
+            // until it's built, and while it misses a bulk write, the database answers instead
+            if (prefixIndex != null && nameIndexesBuiltFor == nameIndexesInvalidations.get()) {
+                for (PrefixIndex.Match match : prefixIndex.find(prefix, maxResults)) {
+                    suggestions.add(toSuggestion(match.getId(), match.getValue()));
+                }
+                return ResponseEntity.ok(suggestions);
+            }
+        }
+
+        // normalized as the prefix index does, whitespace runs in stored names aside
+        CriteriaBuilder criteriaBuilder = getEntityManager().getCriteriaBuilder();
+        CriteriaQuery<Tuple> criteriaQuery = criteriaBuilder.createTupleQuery();
+        Root<InventoryItem> root = criteriaQuery.from(InventoryItem.class);
+        Expression<String> normalizedName = criteriaBuilder.function("translate", String.class,
+                criteriaBuilder.lower(root.get("name")), criteriaBuilder.literal(NAME_ACCENTS[0]), criteriaBuilder.literal(NAME_ACCENTS[1]));
+        String pattern = PrefixIndex.normalize(prefix).replaceAll("([\\\\%_])", "\\\\$1") + "%";
+        criteriaQuery.multiselect(root.get("uuid"), root.get("name"));
+        criteriaQuery.where(criteriaBuilder.like(normalizedName, pattern, '\\'));
+        criteriaQuery.orderBy(criteriaBuilder.asc(normalizedName), criteriaBuilder.asc(root.get("uuid")));
+
+        for (Tuple tuple : getEntityManager().createQuery(criteriaQuery).setMaxResults(maxResults).getResultList()) {
+            suggestions.add(toSuggestion(tuple.get(0, String.class), tuple.get(1, String.class)));
+        }
+        return ResponseEntity.ok(suggestions);
+    }
+
+    private static String[] buildNameAccents() {
+        StringBuilder accents = new StringBuilder();
+        StringBuilder letters = new StringBuilder();
+        for (char c = '\u00C0'; c <= '\u017F'; c++) {
+            String normalized = PrefixIndex.normalize(String.valueOf(c));
+            if (Character.isLowerCase(c) && normalized.length() == 1 && normalized.charAt(0) != c) {
+                accents.append(c);
+                letters.append(normalized);
+            }
+        }
+        return new String[]{accents.toString(), letters.toString()};
+    }
+
+    private Map<String, Object> toSuggestion(String uuid, String name) {
+        Map<String, Object> suggestion = new LinkedHashMap<>();
+        suggestion.put("uuid", uuid);
+        suggestion.put("name", name);
+        return suggestion;
+    }
+
+    private NGramIndex getNameIndex() {
+        rebuildNameIndexesIfStale();
+        return nameIndex;
+    }
+
+    private PrefixIndex getNamePrefixIndex() {
+        rebuildNameIndexesIfStale();
+        return namePrefixIndex;
+    }
+
+    // the previous indexes keep being served while new ones are built in the background
+    private void rebuildNameIndexesIfStale() {
+        if (areNameIndexesStale()) {
+            rebuildInBackground(nameIndexesRebuilding, this::rebuildNameIndexes);
+        }
+    }
+
+    protected boolean areNameIndexesStale() {
+        return nameIndexesBuiltFor != nameIndexesInvalidations.get()
+                || System.currentTimeMillis() - nameIndexesBuiltAt > nameIndexRebuildMillis;
+    }
+
+    private void rebuildNameIndexes() {
+        if (!areNameIndexesStale()) {
+            return;
+        }
+
+        // a bulk write committed while the snapshot below is read leaves the indexes stale
+        int invalidations = nameIndexesInvalidations.get();
+        NGramIndex index = nameIndexEnabled ? new NGramIndex() : null;
+        PrefixIndex prefixIndex = suggestEnabled ? new PrefixIndex() : null;
+        synchronized (nameIndexLock) {
+            rebuildingNameIndex = index;
+            rebuildingNamePrefixIndex = prefixIndex;
+            namesWrittenDuringRebuild = new HashSet<>();
+        }
+
+        try (Stream<Object[]> rows = getEntityManager()
+                .createQuery("SELECT i.uuid, i.name FROM InventoryItem i", Object[].class)
+                .setHint(QueryHints.HINT_FETCH_SIZE, 500)
+                .setHint(QueryHints.HINT_READONLY, true)
+                .getResultStream()) {
+            rows.forEach(row -> putSnapshotName((String) row[0], (String) row[1]));
+
+            synchronized (nameIndexLock) {
+                nameIndex = index;
+                namePrefixIndex = prefixIndex;
+            }
+            nameIndexesBuiltFor = invalidations;
+            nameIndexesBuiltAt = System.currentTimeMillis();
+        } finally {
+            synchronized (nameIndexLock) {
+                rebuildingNameIndex = null;
+                rebuildingNamePrefixIndex = null;
+                namesWrittenDuringRebuild = null;
+            }
+        }
+    }
+
+    // a name written during the rebuild was committed no earlier than the row read here, so it's kept
+    private void putSnapshotName(String uuid, String name) {
+        synchronized (nameIndexLock) {
+            if (namesWrittenDuringRebuild.contains(uuid)) {
+                return;
+            }
+            if (rebuildingNameIndex != null) {
+                rebuildingNameIndex.put(uuid, name);
+            }
+            if (rebuildingNamePrefixIndex != null) {
+                rebuildingNamePrefixIndex.put(uuid, name);
+            }
+        }
+    }
+
+    @Override
+    protected void onEntityWritten(InventoryItem inventoryItem) {
+        indexName(inventoryItem.getUuid(), inventoryItem.getName());
+    }
+
+    @Override
+    protected void onEntityPatched(String id, Map<String, Object> values) {
+        if (values.containsKey("name")) {
+            indexName(id, (String) values.get("name"));
+        }
+    }
+
+    @Override
+    protected void onEntityRemoved(String id) {
+        indexName(id, null);
+    }
+
+    @Override
+    protected void onBulkWrite() {
+        nameIndexesInvalidations.incrementAndGet();
+    }
+
+    // applied to the indexes being rebuilt too, whose snapshot may have read the row before this write
+    private void indexName(String uuid, String name) {
+        synchronized (nameIndexLock) {
+            if (namesWrittenDuringRebuild != null) {
+                namesWrittenDuringRebuild.add(uuid);
+            }
+            for (NGramIndex index : new NGramIndex[]{nameIndex, rebuildingNameIndex}) {
+                if (index != null) {
+                    index.put(uuid, name);
+                }
+            }
+            for (PrefixIndex index : new PrefixIndex[]{namePrefixIndex, rebuildingNamePrefixIndex}) {
+                if (index != null) {
+                    index.put(uuid, name);
+                }
+            }
+        }
+    }
 }
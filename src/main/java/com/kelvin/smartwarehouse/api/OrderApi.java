@@ -1,35 +1,57 @@
 package com.kelvin.smartwarehouse.api;
 
 import com.kelvin.api.service.BaseApi;
+import com.kelvin.api.service.EntityChangedEvent;
+import com.kelvin.api.service.ImportReport;
+import com.kelvin.api.service.ImportRow;
 import com.kelvin.smartwarehouse.exception.InvalidParameterException;
 import com.kelvin.smartwarehouse.model.Order;
+import com.kelvin.smartwarehouse.model.OrderItem;
 import com.kelvin.smartwarehouse.model.enums.OrderStatus;
+import com.kelvin.smartwarehouse.service.OrderHoldService;
 import com.kelvin.smartwarehouse.utils.CsvUtils;
 import com.kelvin.smartwarehouse.utils.XlsxUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import javax.persistence.TypedQuery;
+import javax.servlet.http.HttpServletRequest;
 import javax.persistence.criteria.*;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileWriter;
-import java.nio.file.Files;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import static com.kelvin.smartwarehouse.management.AppConstants.ORDERS_URL;
+import static com.kelvin.smartwarehouse.management.AppConstants.XLSX_VALUE;
 
 @RestController
 @RequestMapping(ORDERS_URL)
 public class OrderApi extends BaseApi<Order> {
 
+    private static final Set<String> IMPORT_COLUMNS = Set.of("submittedDate", "deadlineDate", "status");
+
+    @Autowired
+    OrderHoldService orderHoldService;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
     public OrderApi() {
         super(Order.class);
     }
@@ -65,43 +87,149 @@ public class OrderApi extends BaseApi<Order> {
         }
     }
 
+    // a stored order may be past its deadline already, only a patched deadline has to be in the future
+    @Override
+    protected void validatePatch(Order order, Map<String, Object> values) throws Exception {
+        if (values.containsKey("deadlineDate")) {
+            prePersist(order);
+        }
+    }
+
+    // the items of a created order are inserted with it, jdbc batching groups their inserts
+    @Override
+    protected void postPersist(Order order) throws Exception {
+        List<OrderItem> orderItems = order.getItems();
+        if (orderItems == null || orderItems.isEmpty()) {
+            return;
+        }
+
+        for (int i = 0; i < orderItems.size(); i++) {
+            OrderItem orderItem = orderItems.get(i);
+            if (orderItem == null) {
+                throw new InvalidParameterException(String.format("Order item %d is empty!", i));
+            }
+            orderItem.setUuid(null);
+            orderItem.setOrderUuid(order.getUuid());
+            try {
+                OrderItemApi.validate(orderItem);
+            } catch (InvalidParameterException e) {
+                throw new InvalidParameterException(String.format("Order item %d: %s", i, e.getMessage()));
+            }
+        }
+
+        if (nn("checkItems") && _boolean("checkItems")) {
+            checkItemsExist(orderItems);
+        }
+
+        for (OrderItem orderItem : orderItems) {
+            getEntityManager().persist(orderItem);
+            eventPublisher.publishEvent(new EntityChangedEvent(OrderItem.class, orderItem.getUuid()));
+        }
+    }
+
+    private void checkItemsExist(List<OrderItem> orderItems) {
+        Set<String> itemUuids = orderItems.stream()
+                .map(OrderItem::getItemUuid)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+
+        List<String> existing = getEntityManager()
+                .createQuery("SELECT i.uuid FROM InventoryItem i WHERE i.uuid IN :uuids", String.class)
+                .setParameter("uuids", itemUuids)
+                .getResultList();
+        itemUuids.removeAll(existing);
+
+        if (!itemUuids.isEmpty()) {
+            String message = String.format("Inventory items with ids %s don't exist!", itemUuids);
+            throw new InvalidParameterException(message);
+        }
+    }
+
+    @Override
+    protected void onEntityWritten(Order order) {
+        orderHoldService.onStatusChanged(order.getUuid(), order.getStatus());
+    }
+
+    @Override
+    protected void onEntityPatched(String id, Map<String, Object> values) {
+        if (values.containsKey("status")) {
+            orderHoldService.onStatusChanged(id, (OrderStatus) values.get("status"));
+        }
+    }
+
+    @Override
+    protected void onEntityRemoved(String id) {
+        orderHoldService.onOrderRemoved(id);
+    }
+
+    @Override
+    protected void onBulkWrite() {
+        orderHoldService.onOrdersChanged();
+    }
+
+    /**
+     * Streams the orders to the response as they are read by a scrolling query, in a transaction of the
+     * response body, so neither the orders nor the file are ever held in memory.
+     */
     @GetMapping(value = "/export", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
-    @Transactional
-    public ResponseEntity exportOrders(@RequestParam(defaultValue = "csv") String type) throws Exception {
+    public ResponseEntity<StreamingResponseBody> exportOrders(@RequestParam(defaultValue = "csv") String type) throws Exception {
 
-        File file;
-        List<Order> list = getAll();
+        StreamingResponseBody body;
         if (type.equals("csv")) {
-            file = Files.createTempFile("orders", ".csv").toFile();
-            CsvUtils.writeCsv(new FileWriter(file), list);
+            body = outputStream -> {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+                scrollAll(orders -> CsvUtils.writeCsv(writer, orders));
+            };
         }
         else if(type.equals("xlsx")){
-            file = Files.createTempFile("orders", ".xlsx").toFile();
-            XlsxUtils.writeXlsx(file, list);
+            body = outputStream -> scrollAll(orders -> XlsxUtils.writeXlsx(outputStream, orders));
         }
         else {
             String message = String.format("%s type is not supported for the orders export.", type);
             throw new InvalidParameterException(message);
         }
 
-        FileInputStream fileInputStream = new FileInputStream(file);
-
-        byte[] content = fileInputStream.readAllBytes();
-
-        return ResponseEntity.ok(content);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
     }
 
-    private List<Order> getAll() {
-        CriteriaBuilder criteriaBuilder = getEntityManager().getCriteriaBuilder();
-
-        CriteriaQuery<Order> criteriaQuery = criteriaBuilder.createQuery(getEntityClass());
+    /**
+     * Creates the orders of a csv or xlsx file with the columns of the export, read from the request body.
+     * The uuid column is ignored, every row creates a new order.
+     */
+    @PostMapping(value = "/import", consumes = {"text/csv", XLSX_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<ImportReport> importOrders(@RequestParam(defaultValue = "csv") String type, HttpServletRequest request) throws Exception {
 
-        Root<Order> root = criteriaQuery.from(getEntityClass());
-        criteriaQuery.select(root);
+        ImportReport report;
+        if (type.equals("csv")) {
+            report = importCsv(request, IMPORT_COLUMNS, this::toOrder);
+        }
+        else if (type.equals("xlsx")) {
+            report = importXlsx(request, IMPORT_COLUMNS, this::toOrder);
+        }
+        else {
+            String message = String.format("%s type is not supported for the orders import.", type);
+            throw new InvalidParameterException(message);
+        }
 
-        TypedQuery<Order> search = getEntityManager().createQuery(criteriaQuery);
+        return ResponseEntity.ok(report);
+    }
 
-        return search.getResultList();
+    private Order toOrder(ImportRow row) {
+        Order order = new Order();
+        try {
+            order.setSubmittedDate(row.get("submittedDate") != null ? LocalDate.parse(row.get("submittedDate")) : null);
+            order.setDeadlineDate(row.get("deadlineDate") != null ? LocalDate.parse(row.get("deadlineDate")) : null);
+        } catch (DateTimeParseException e) {
+            throw new InvalidParameterException(String.format("Order date [%s] should be formatted as yyyy-MM-dd!", e.getParsedString()));
+        }
+        if (row.get("status") != null) {
+            try {
+                order.setStatus(OrderStatus.valueOf(row.get("status")));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidParameterException(String.format("Order status [%s] is not valid!", row.get("status")));
+            }
+        }
+        return order;
     }
 }
-
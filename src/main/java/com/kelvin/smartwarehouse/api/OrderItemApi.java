@@ -3,6 +3,8 @@ package com.kelvin.smartwarehouse.api;
 import com.kelvin.api.service.BaseApi;
 import com.kelvin.smartwarehouse.exception.InvalidParameterException;
 import com.kelvin.smartwarehouse.model.OrderItem;
+import com.kelvin.smartwarehouse.service.OrderHoldService;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
@@ -12,6 +14,7 @@ import javax.persistence.criteria.Predicate;
 import javax.persistence.criteria.Root;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static com.kelvin.smartwarehouse.management.AppConstants.ORDER_ITEMS_URL;
 
@@ -19,6 +22,9 @@ import static com.kelvin.smartwarehouse.management.AppConstants.ORDER_ITEMS_URL;
 @RequestMapping(ORDER_ITEMS_URL)
 public class OrderItemApi extends BaseApi<OrderItem> {
 
+    @Autowired
+    OrderHoldService orderHoldService;
+
     public OrderItemApi() {
         super(OrderItem.class);
     }
@@ -48,6 +54,10 @@ public class OrderItemApi extends BaseApi<OrderItem> {
 
     @Override
     protected void prePersist(OrderItem orderItem) throws Exception {
+        validate(orderItem);
+    }
+
+    static void validate(OrderItem orderItem) {
         if (orderItem.getOrderUuid() == null || orderItem.getOrderUuid().isBlank()){
             throw new InvalidParameterException("Order item order uuid is required!");
         }
@@ -58,4 +68,28 @@ public class OrderItemApi extends BaseApi<OrderItem> {
             throw new InvalidParameterException("Order item quantity should be a positive number!");
         }
     }
+
+    @Override
+    protected void onEntityWritten(OrderItem orderItem) {
+        orderHoldService.onOrderItemsChanged(orderItem.getOrderUuid());
+    }
+
+    // the patch may move the item to another order, which leaves the holds of both to be checked
+    @Override
+    protected void onEntityPatched(String id, Map<String, Object> values) {
+        orderHoldService.onOrdersChanged();
+    }
+
+    // loaded before it's deleted, so that the holds of its order can be checked afterwards
+    @Override
+    protected void toDelete(OrderItem orderItem) {
+        super.toDelete(orderItem);
+        String orderUuid = orderItem.getOrderUuid();
+        afterCommit(() -> orderHoldService.onOrderItemsChanged(orderUuid));
+    }
+
+    @Override
+    protected void onBulkWrite() {
+        orderHoldService.onOrdersChanged();
+    }
 }
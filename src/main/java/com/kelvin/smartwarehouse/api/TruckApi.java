@@ -41,6 +41,21 @@ public class TruckApi extends BaseApi<Truck> {
         return "licensePlate asc";
     }
 
+    @Override
+    protected int getEntityCacheMaxSize() {
+        return 1000;
+    }
+
+    @Override
+    protected long getEntityCacheTtlMillis() {
+        return 300000;
+    }
+
+    @Override
+    protected boolean isNegativeLookupEnabled() {
+        return true;
+    }
+
     @Override
     protected List<Predicate> getFilters(CriteriaBuilder criteriaBuilder, Root<Truck> root){
         List<Predicate> predicates = new ArrayList<>();
@@ -2,8 +2,9 @@ package com.kelvin.smartwarehouse.exception;
 
 public class EntityWithIdNotFoundException extends RuntimeException{
 
+    // thrown for every lookup of an unknown id, so the stack trace isn't worth its cost
     public EntityWithIdNotFoundException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 
     public EntityWithIdNotFoundException(String message, Throwable cause) {
@@ -0,0 +1,30 @@
+package com.kelvin.smartwarehouse.exception;
+
+import com.kelvin.smartwarehouse.model.IdempotencyRecord;
+
+public class IdempotentReplayException extends RuntimeException{
+
+    private final String scopedKey;
+    private final String requestHash;
+    private final IdempotencyRecord record;
+
+    // the record is null when the key was found taken in the database, it's loaded by the handler
+    public IdempotentReplayException(String scopedKey, String requestHash, IdempotencyRecord record) {
+        super(String.format("Request with idempotency key [%s] was already processed!", scopedKey), null, false, false);
+        this.scopedKey = scopedKey;
+        this.requestHash = requestHash;
+        this.record = record;
+    }
+
+    public String getScopedKey() {
+        return scopedKey;
+    }
+
+    public String getRequestHash() {
+        return requestHash;
+    }
+
+    public IdempotencyRecord getRecord() {
+        return record;
+    }
+}
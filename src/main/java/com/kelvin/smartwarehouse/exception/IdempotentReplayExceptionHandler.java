@@ -0,0 +1,46 @@
+package com.kelvin.smartwarehouse.exception;
+
+import com.kelvin.smartwarehouse.model.IdempotencyRecord;
+import com.kelvin.smartwarehouse.service.IdempotencyStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+// answers a replayed request with the response stored for its idempotency key
+@ControllerAdvice
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class IdempotentReplayExceptionHandler {
+
+    @Autowired
+    IdempotencyStore idempotencyStore;
+
+    @ExceptionHandler(value = {IdempotentReplayException.class})
+    public ResponseEntity handleIdempotentReplayException(IdempotentReplayException e){
+
+        IdempotencyRecord record = e.getRecord() != null ? e.getRecord() : idempotencyStore.load(e.getScopedKey());
+
+        // only an expired key that wasn't purged yet is missing here, the retry can then reuse it
+        if (record == null) {
+            idempotencyStore.purgeExpired();
+            String message = String.format("Idempotency key [%s] has expired, retry the request!", e.getScopedKey());
+            return new ResponseEntity<>(new ApiException(message, ZonedDateTime.now(ZoneId.of("Z"))), HttpStatus.CONFLICT);
+        }
+        if (!record.getRequestHash().equals(e.getRequestHash())) {
+            String message = String.format("Idempotency key [%s] was already used by a different request!", e.getScopedKey());
+            return new ResponseEntity<>(new ApiException(message, ZonedDateTime.now(ZoneId.of("Z"))), HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+
+        return ResponseEntity.status(record.getStatus())
+                .contentType(MediaType.APPLICATION_JSON)
+                .header(IdempotencyStore.REPLAYED_HEADER, "true")
+                .body(record.getBody());
+    }
+}
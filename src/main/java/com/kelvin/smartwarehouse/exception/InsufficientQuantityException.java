@@ -0,0 +1,9 @@
+package com.kelvin.smartwarehouse.exception;
+
+public class InsufficientQuantityException extends RuntimeException{
+
+    // an expected outcome under contention, so the stack trace isn't worth its cost
+    public InsufficientQuantityException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,28 @@
+package com.kelvin.smartwarehouse.exception;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+// ordered ahead of GlobalExceptionHandler, which would otherwise answer every RuntimeException with 400
+@ControllerAdvice
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class InsufficientQuantityExceptionHandler {
+
+    @ExceptionHandler(value = {InsufficientQuantityException.class})
+    public ResponseEntity handleInsufficientQuantityException(RuntimeException e){
+
+        ApiException apiException = new ApiException(
+                e.getMessage(),
+                ZonedDateTime.now(ZoneId.of("Z"))
+        );
+
+        return new ResponseEntity<>(apiException, HttpStatus.CONFLICT);
+    }
+}
@@ -10,4 +10,6 @@ public class AppConstants {
     public final static String ORDER_ITEMS_URL = API + "/order-items";
     public final static String INVENTORY_ITEMS_URL = API + "/inventory-items";
     public final static String TRUCK_URL = API + "/trucks";
+
+    public final static String XLSX_VALUE = "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet";
 }
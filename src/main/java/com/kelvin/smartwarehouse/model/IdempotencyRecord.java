@@ -0,0 +1,27 @@
+package com.kelvin.smartwarehouse.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+
+@Data
+@Entity
+@Table(name = "idempotency_keys", indexes = @Index(name = "idempotency_keys_expires_at", columnList = "expires_at"))
+public class IdempotencyRecord {
+
+    // the idempotency key prefixed by the entity it was used for
+    @Id
+    @Column(name = "scoped_key")
+    private String scopedKey;
+
+    @Column(name = "request_hash")
+    private String requestHash;
+
+    private int status;
+
+    @Column(columnDefinition = "TEXT")
+    private String body;
+
+    @Column(name = "expires_at")
+    private long expiresAt;
+}
@@ -0,0 +1,32 @@
+package com.kelvin.smartwarehouse.model;
+
+import lombok.Data;
+import org.hibernate.annotations.GenericGenerator;
+
+import javax.persistence.*;
+
+@Data
+@Entity
+@Table(name = "inventory_holds", indexes = @Index(name = "inventory_holds_order_uuid", columnList = "order_uuid"))
+public class InventoryHold {
+
+    @GeneratedValue(generator = "uuid")
+    @GenericGenerator(name = "uuid", strategy = "uuid2")
+    @Column(name = "uuid", unique = true)
+    @Id
+    private String uuid;
+
+    @Column(name = "order_uuid")
+    private String orderUuid;
+
+    @Column(name = "item_uuid")
+    private String itemUuid;
+
+    private int quantity;
+
+    @Column(name = "expires_at")
+    private long expiresAt;
+
+    // an expired hold stays until its order leaves AWAITING_APPROVAL, so the order isn't held again
+    private boolean released;
+}
@@ -0,0 +1,18 @@
+package com.kelvin.smartwarehouse.model;
+
+import lombok.Data;
+
+import javax.persistence.*;
+
+@Data
+@Entity
+@Table(name = "inventory_reservations")
+public class InventoryReservation {
+
+    @Column(name = "item_uuid")
+    @Id
+    private String itemUuid;
+
+    // the units taken by reservations of the item and not released yet
+    private int reserved;
+}
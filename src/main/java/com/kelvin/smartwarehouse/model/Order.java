@@ -1,11 +1,13 @@
 package com.kelvin.smartwarehouse.model;
 
 import com.kelvin.smartwarehouse.model.enums.OrderStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 import org.hibernate.annotations.GenericGenerator;
 
 import javax.persistence.*;
 import java.time.LocalDate;
+import java.util.List;
 
 @Data
 @Entity
@@ -26,4 +28,9 @@ public class Order {
 
     @Enumerated(EnumType.STRING)
     private OrderStatus status;
+
+    // only carried by create requests and their responses, the items are stored as order items
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<OrderItem> items;
 }
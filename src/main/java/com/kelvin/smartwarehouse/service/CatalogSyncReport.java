@@ -0,0 +1,68 @@
+package com.kelvin.smartwarehouse.service;
+
+import com.kelvin.api.service.ImportReport;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class CatalogSyncReport {
+
+    private final int maxRejectedLines;
+    private long inserted;
+    private long updated;
+    private long unchanged;
+    private long deleted;
+    private long rejected;
+    private final List<ImportReport.RejectedLine> rejectedLines = new ArrayList<>();
+
+    public CatalogSyncReport(int maxRejectedLines) {
+        this.maxRejectedLines = maxRejectedLines;
+    }
+
+    void addRejected(int line, String error) {
+        rejected++;
+        if (rejectedLines.size() < maxRejectedLines) {
+            rejectedLines.add(new ImportReport.RejectedLine(line, error));
+        }
+    }
+
+    public long getInserted() {
+        return inserted;
+    }
+
+    void setInserted(long inserted) {
+        this.inserted = inserted;
+    }
+
+    public long getUpdated() {
+        return updated;
+    }
+
+    void setUpdated(long updated) {
+        this.updated = updated;
+    }
+
+    public long getUnchanged() {
+        return unchanged;
+    }
+
+    void setUnchanged(long unchanged) {
+        this.unchanged = unchanged;
+    }
+
+    public long getDeleted() {
+        return deleted;
+    }
+
+    void setDeleted(long deleted) {
+        this.deleted = deleted;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public List<ImportReport.RejectedLine> getRejectedLines() {
+        return rejectedLines;
+    }
+}
@@ -0,0 +1,151 @@
+package com.kelvin.smartwarehouse.service;
+
+import com.kelvin.api.service.BoundedCache;
+import com.kelvin.smartwarehouse.exception.IdempotentReplayException;
+import com.kelvin.smartwarehouse.exception.InvalidParameterException;
+import com.kelvin.smartwarehouse.model.IdempotencyRecord;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Responses of requests sent with an idempotency key, kept for a limited time.
+ * Recently used keys are looked up in memory only, so the first use of a key costs no extra query.
+ * The key is inserted in the transaction of the request it belongs to, where the primary key
+ * of the table makes a concurrent, or forgotten, use of the same key fail, and only then is the
+ * stored response read from the database.
+ */
+@Slf4j
+@Service
+public class IdempotencyStore {
+
+    public static final String KEY_HEADER = "Idempotency-Key";
+
+    public static final String REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 128;
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Value("${api.idempotency.ttl-millis:86400000}")
+    long ttlMillis;
+
+    @Value("${api.idempotency.max-size:10000}")
+    int maxSize;
+
+    @Value("${api.idempotency.purge-interval-millis:600000}")
+    long purgeIntervalMillis;
+
+    private BoundedCache<String, IdempotencyRecord> recentRecords;
+
+    private TransactionTemplate transactionTemplate;
+
+    private volatile long purgedAt = System.currentTimeMillis();
+
+    @PostConstruct
+    void init() {
+        recentRecords = new BoundedCache<>(maxSize, ttlMillis);
+        transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public String toScopedKey(Class<?> entityClass, String key) {
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            String message = String.format("%s header should have between 1 and %d characters!", KEY_HEADER, MAX_KEY_LENGTH);
+            throw new InvalidParameterException(message);
+        }
+        return entityClass.getSimpleName() + ":" + key;
+    }
+
+    // the hot path, never queries the database
+    public IdempotencyRecord find(String scopedKey) {
+        return recentRecords.get(scopedKey);
+    }
+
+    @Transactional(readOnly = true)
+    public IdempotencyRecord load(String scopedKey) {
+        long generation = recentRecords.getGeneration();
+        IdempotencyRecord record = entityManager.find(IdempotencyRecord.class, scopedKey);
+        if (record == null || record.getExpiresAt() < System.currentTimeMillis()) {
+            return null;
+        }
+        recentRecords.put(scopedKey, record, generation);
+        return record;
+    }
+
+    /**
+     * Stores the response of a request in the transaction of the request, or throws {@link IdempotentReplayException}
+     * when the key is already taken, which rolls the request back.
+     */
+    public void save(String scopedKey, String requestHash, int status, String body) {
+        IdempotencyRecord record = new IdempotencyRecord();
+        record.setScopedKey(scopedKey);
+        record.setRequestHash(requestHash);
+        record.setStatus(status);
+        record.setBody(body);
+        record.setExpiresAt(System.currentTimeMillis() + ttlMillis);
+
+        // writes the request first, so that a constraint violated below can only be the key
+        entityManager.flush();
+        try {
+            entityManager.persist(record);
+            entityManager.flush();
+        } catch (PersistenceException e) {
+            if (e.getCause() instanceof ConstraintViolationException) {
+                throw new IdempotentReplayException(scopedKey, requestHash, null);
+            }
+            throw e;
+        }
+
+        long generation = recentRecords.getGeneration();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentRecords.put(scopedKey, record, generation);
+                if (System.currentTimeMillis() - purgedAt > purgeIntervalMillis) {
+                    purgeExpired();
+                }
+            }
+        });
+    }
+
+    // expired keys keep their rows until purged, which is what lets them be used again
+    public void purgeExpired() {
+        purgedAt = System.currentTimeMillis();
+        try {
+            Integer purged = transactionTemplate.execute(status -> entityManager
+                    .createQuery("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+                    .setParameter("now", System.currentTimeMillis())
+                    .executeUpdate());
+            log.debug("Purged {} expired idempotency keys.", purged);
+        } catch (RuntimeException e) {
+            log.error("Expired idempotency keys can't be purged!", e);
+        }
+    }
+
+    public static String hash(byte[] request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(request);
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
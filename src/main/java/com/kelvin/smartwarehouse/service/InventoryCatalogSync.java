@@ -0,0 +1,197 @@
+package com.kelvin.smartwarehouse.service;
+
+import com.kelvin.api.service.ImportRow;
+import com.kelvin.smartwarehouse.exception.InvalidParameterException;
+import com.kelvin.smartwarehouse.model.InventoryItem;
+import org.hibernate.Session;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Brings inventory_items in line with a full catalog file in one transaction.
+ * The content hash of every stored item is read with a single scan, then each row of the file is
+ * hashed the same way, so only new and changed rows are written, as JDBC batches, and items missing
+ * from the file can be deleted at the end. Hashes are computed from the stored rows on every sync,
+ * so writes made through the api in between are never missed.
+ */
+@Service
+public class InventoryCatalogSync {
+
+    public static final Set<String> COLUMNS = Set.of("uuid", "name", "quantity", "unitPrice", "packageVolume");
+
+    private static final String SELECT_SQL = "SELECT uuid, name, quantity, unit_price, package_volume FROM inventory_items";
+    private static final String INSERT_SQL = "INSERT INTO inventory_items (name, quantity, unit_price, package_volume, uuid) VALUES (?, ?, ?, ?, ?)";
+    private static final String UPDATE_SQL = "UPDATE inventory_items SET name = ?, quantity = ?, unit_price = ?, package_volume = ? WHERE uuid = ?";
+    private static final String DELETE_SQL = "DELETE FROM inventory_items WHERE uuid = ?";
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Value("${api.stream.fetch-size:500}")
+    int fetchSize;
+
+    @Value("${api.import.batch-size:500}")
+    int batchSize;
+
+    @Value("${api.import.max-rejected-lines:1000}")
+    int maxRejectedLines;
+
+    /**
+     * Syncs the rows, header first, of a file with the {@link #COLUMNS} columns. Rows rejected by the
+     * mapper are reported, and their items are neither changed nor deleted.
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public CatalogSyncReport sync(Iterator<String[]> rows, ImportRow.Mapper<InventoryItem> mapper, boolean deleteMissing) {
+        if (!rows.hasNext()) {
+            throw new InvalidParameterException("Imported file is empty!");
+        }
+        Map<String, Integer> columns = ImportRow.toColumns(rows.next(), COLUMNS);
+        CatalogSyncReport report = new CatalogSyncReport(maxRejectedLines);
+
+        entityManager.flush();
+        entityManager.unwrap(Session.class).doWork(connection -> {
+            Map<String, Long> storedHashes = readStoredHashes(connection.prepareStatement(SELECT_SQL));
+            Set<String> seen = new HashSet<>();
+
+            try (Batch inserts = new Batch(connection.prepareStatement(INSERT_SQL));
+                 Batch updates = new Batch(connection.prepareStatement(UPDATE_SQL))) {
+                long unchanged = 0;
+                int line = 1;
+                while (rows.hasNext()) {
+                    ImportRow row = new ImportRow(++line, columns, rows.next());
+                    if (row.isBlank()) {
+                        continue;
+                    }
+                    String uuid = row.get("uuid");
+                    if (uuid == null) {
+                        report.addRejected(line, "Inventory item uuid is required!");
+                        continue;
+                    }
+                    if (!seen.add(uuid)) {
+                        report.addRejected(line, String.format("Inventory item with id [%s] is repeated!", uuid));
+                        continue;
+                    }
+
+                    InventoryItem inventoryItem;
+                    try {
+                        inventoryItem = mapper.toEntity(row);
+                    } catch (Exception e) {
+                        report.addRejected(line, e.getMessage());
+                        storedHashes.remove(uuid);
+                        continue;
+                    }
+
+                    Long storedHash = storedHashes.remove(uuid);
+                    if (storedHash == null) {
+                        inserts.add(inventoryItem, uuid);
+                    } else if (storedHash != contentHash(inventoryItem.getName(), inventoryItem.getQuantity(),
+                            inventoryItem.getUnitPrice(), inventoryItem.getPackageVolume())) {
+                        updates.add(inventoryItem, uuid);
+                    } else {
+                        unchanged++;
+                    }
+                }
+                inserts.flush();
+                updates.flush();
+                report.setInserted(inserts.count);
+                report.setUpdated(updates.count);
+                report.setUnchanged(unchanged);
+            }
+
+            // whatever is left in the map wasn't in the file
+            if (deleteMissing && !storedHashes.isEmpty()) {
+                try (PreparedStatement delete = connection.prepareStatement(DELETE_SQL)) {
+                    int pending = 0;
+                    for (String uuid : storedHashes.keySet()) {
+                        delete.setString(1, uuid);
+                        delete.addBatch();
+                        if (++pending == batchSize) {
+                            delete.executeBatch();
+                            pending = 0;
+                        }
+                    }
+                    if (pending > 0) {
+                        delete.executeBatch();
+                    }
+                }
+                report.setDeleted(storedHashes.size());
+            }
+        });
+        return report;
+    }
+
+    private Map<String, Long> readStoredHashes(PreparedStatement select) throws SQLException {
+        Map<String, Long> storedHashes = new HashMap<>();
+        try (select) {
+            select.setFetchSize(fetchSize);
+            try (ResultSet resultSet = select.executeQuery()) {
+                while (resultSet.next()) {
+                    storedHashes.put(resultSet.getString(1), contentHash(resultSet.getString(2),
+                            resultSet.getInt(3), resultSet.getDouble(4), resultSet.getDouble(5)));
+                }
+            }
+        }
+        return storedHashes;
+    }
+
+    // 64 bit FNV-1a of the values, so only a hash is held in memory per stored item
+    static long contentHash(String name, int quantity, double unitPrice, double packageVolume) {
+        String content = (name != null ? name : "\u0000") + '\u001f' + quantity + '\u001f' + unitPrice + '\u001f' + packageVolume;
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : content.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // an insert or update statement whose parameters are the item values followed by its uuid
+    private class Batch implements AutoCloseable {
+
+        private final PreparedStatement statement;
+        private int pending;
+        private long count;
+
+        private Batch(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        private void add(InventoryItem inventoryItem, String uuid) throws SQLException {
+            statement.setString(1, inventoryItem.getName());
+            statement.setInt(2, inventoryItem.getQuantity());
+            statement.setDouble(3, inventoryItem.getUnitPrice());
+            statement.setDouble(4, inventoryItem.getPackageVolume());
+            statement.setString(5, uuid);
+            statement.addBatch();
+            count++;
+            if (++pending == batchSize) {
+                flush();
+            }
+        }
+
+        private void flush() throws SQLException {
+            if (pending > 0) {
+                statement.executeBatch();
+                pending = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            statement.close();
+        }
+    }
+}
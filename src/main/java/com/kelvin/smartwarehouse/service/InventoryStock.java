@@ -0,0 +1,131 @@
+package com.kelvin.smartwarehouse.service;
+
+import com.kelvin.api.service.EntityChangedEvent;
+import com.kelvin.smartwarehouse.model.InventoryItem;
+import com.kelvin.smartwarehouse.model.InventoryReservation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaUpdate;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Root;
+import java.util.List;
+
+/**
+ * Atomic changes of inventory item quantities, each a single UPDATE that the database serializes
+ * per row, so they are safe under any number of concurrent callers.
+ */
+@Service
+public class InventoryStock {
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    ApplicationEventPublisher eventPublisher;
+
+    // UPDATE ... SET quantity = quantity - ? WHERE uuid = ? AND quantity >= ?
+    @Transactional
+    public boolean take(String itemUuid, int quantity) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<InventoryItem> criteriaUpdate = criteriaBuilder.createCriteriaUpdate(InventoryItem.class);
+        Root<InventoryItem> root = criteriaUpdate.from(InventoryItem.class);
+        Path<Integer> quantityPath = root.get("quantity");
+        criteriaUpdate.set(quantityPath, criteriaBuilder.diff(quantityPath, quantity));
+        criteriaUpdate.where(
+                criteriaBuilder.equal(root.get("uuid"), itemUuid),
+                criteriaBuilder.ge(quantityPath, quantity)
+        );
+        return changed(itemUuid, entityManager.createQuery(criteriaUpdate).executeUpdate());
+    }
+
+    @Transactional
+    public boolean giveBack(String itemUuid, int quantity) {
+        CriteriaBuilder criteriaBuilder = entityManager.getCriteriaBuilder();
+        CriteriaUpdate<InventoryItem> criteriaUpdate = criteriaBuilder.createCriteriaUpdate(InventoryItem.class);
+        Root<InventoryItem> root = criteriaUpdate.from(InventoryItem.class);
+        Path<Integer> quantityPath = root.get("quantity");
+        criteriaUpdate.set(quantityPath, criteriaBuilder.sum(quantityPath, quantity));
+        criteriaUpdate.where(criteriaBuilder.equal(root.get("uuid"), itemUuid));
+        return changed(itemUuid, entityManager.createQuery(criteriaUpdate).executeUpdate());
+    }
+
+    /**
+     * Takes the quantity like {@link #take} and adds it to the reserved units of the item in the same
+     * transaction, so it can be released later. The first reservation of an item creates its row, two
+     * of them can't race to it because the taking UPDATE locks the item row until the commit.
+     */
+    @Transactional
+    public boolean reserve(String itemUuid, int quantity) {
+        if (!take(itemUuid, quantity)) {
+            return false;
+        }
+        int updated = entityManager
+                .createQuery("UPDATE InventoryReservation r SET r.reserved = r.reserved + :quantity WHERE r.itemUuid = :itemUuid")
+                .setParameter("quantity", quantity)
+                .setParameter("itemUuid", itemUuid)
+                .executeUpdate();
+        if (updated == 0) {
+            InventoryReservation reservation = new InventoryReservation();
+            reservation.setItemUuid(itemUuid);
+            reservation.setReserved(quantity);
+            entityManager.persist(reservation);
+        }
+        return true;
+    }
+
+    /**
+     * Gives the quantity back only when that many units are reserved, returns false otherwise. The item
+     * row is updated first, as in {@link #reserve}, so a reserve and a release of the same item lock
+     * the two rows in the same order and can't deadlock.
+     */
+    @Transactional
+    public boolean release(String itemUuid, int quantity) {
+        if (!giveBack(itemUuid, quantity)) {
+            return false;
+        }
+        int updated = entityManager
+                .createQuery("UPDATE InventoryReservation r SET r.reserved = r.reserved - :quantity "
+                        + "WHERE r.itemUuid = :itemUuid AND r.reserved >= :quantity")
+                .setParameter("quantity", quantity)
+                .setParameter("itemUuid", itemUuid)
+                .executeUpdate();
+        if (updated == 0) {
+            // fewer units are reserved, the stock given back above is taken again by the rollback
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return false;
+        }
+        return true;
+    }
+
+    @Transactional(readOnly = true)
+    public int getReservedQuantity(String itemUuid) {
+        List<Integer> reserved = entityManager
+                .createQuery("SELECT r.reserved FROM InventoryReservation r WHERE r.itemUuid = :itemUuid", Integer.class)
+                .setParameter("itemUuid", itemUuid)
+                .getResultList();
+        return reserved.isEmpty() ? 0 : reserved.get(0);
+    }
+
+    @Transactional(readOnly = true)
+    public Integer getAvailableQuantity(String itemUuid) {
+        List<Integer> quantities = entityManager
+                .createQuery("SELECT i.quantity FROM InventoryItem i WHERE i.uuid = :uuid", Integer.class)
+                .setParameter("uuid", itemUuid)
+                .getResultList();
+        return quantities.isEmpty() ? null : quantities.get(0);
+    }
+
+    private boolean changed(String itemUuid, int updated) {
+        if (updated == 0) {
+            return false;
+        }
+        eventPublisher.publishEvent(new EntityChangedEvent(InventoryItem.class, itemUuid));
+        return true;
+    }
+}
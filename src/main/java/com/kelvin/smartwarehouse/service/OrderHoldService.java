@@ -0,0 +1,301 @@
+package com.kelvin.smartwarehouse.service;
+
+import com.kelvin.api.service.HashedTimingWheel;
+import com.kelvin.smartwarehouse.model.InventoryHold;
+import com.kelvin.smartwarehouse.model.Order;
+import com.kelvin.smartwarehouse.model.OrderItem;
+import com.kelvin.smartwarehouse.model.enums.OrderStatus;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Holds the stock of the items of orders awaiting approval for a limited time.
+ * Holds are stored as {@link InventoryHold} rows and their expiries are tracked by a timing wheel,
+ * which is rebuilt from the rows on startup. When a hold expires, or its order leaves
+ * AWAITING_APPROVAL, the stock is given back unless the order was APPROVED. An order that expired
+ * is held again only after it leaves AWAITING_APPROVAL and enters it once more. When the items of
+ * a held order change, its holds are taken again for the new items, until the same deadline.
+ * All of it runs on a single background thread, so request threads only queue the work and
+ * the holds of an order are never changed concurrently.
+ */
+@Slf4j
+@Service
+public class OrderHoldService {
+
+    private static final String ORDER_ENTITY = Order.class.getName();
+
+    @Autowired
+    EntityManager entityManager;
+
+    @Autowired
+    InventoryStock inventoryStock;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Value("${api.order-holds.enabled:false}")
+    boolean enabled;
+
+    @Value("${api.order-holds.ttl-millis:900000}")
+    long ttlMillis;
+
+    @Value("${api.order-holds.tick-millis:1000}")
+    long tickMillis;
+
+    @Value("${api.order-holds.wheel-size:512}")
+    int wheelSize;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ExecutorService executor;
+
+    private HashedTimingWheel<String> wheel;
+
+    @PostConstruct
+    void init() {
+        if (!enabled) {
+            return;
+        }
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-holds");
+            thread.setDaemon(true);
+            return thread;
+        });
+        wheel = new HashedTimingWheel<>("order-holds-wheel", tickMillis, wheelSize,
+                orderUuid -> runLogged(() -> resolve(orderUuid)), executor);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover() {
+        submit(this::reconcile);
+    }
+
+    @PreDestroy
+    void close() {
+        if (wheel != null) {
+            wheel.close();
+            executor.shutdown();
+        }
+    }
+
+    public void onStatusChanged(String orderUuid, OrderStatus status) {
+        submit(() -> {
+            if (status == OrderStatus.AWAITING_APPROVAL) {
+                hold(orderUuid);
+            } else {
+                resolve(orderUuid);
+            }
+        });
+    }
+
+    public void onOrderRemoved(String orderUuid) {
+        submit(() -> resolve(orderUuid));
+    }
+
+    // for writes whose orders aren't known, such as bulk statements
+    public void onOrdersChanged() {
+        submit(this::reconcile);
+    }
+
+    // items are usually added after their order was created, the order is held once it has some
+    public void onOrderItemsChanged(String orderUuid) {
+        submit(() -> rehold(orderUuid));
+    }
+
+    private void submit(Runnable task) {
+        if (!enabled) {
+            return;
+        }
+        executor.execute(() -> runLogged(task));
+    }
+
+    // the executor would swallow the exception, and an expiry runs outside of submit
+    private void runLogged(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.error("Order hold task failed!", e);
+        }
+    }
+
+    private void hold(String orderUuid) {
+        hold(orderUuid, null);
+    }
+
+    // takes the stock of every item of the order, or of none of them, until the deadline or for the ttl
+    private void hold(String orderUuid, Long keptDeadline) {
+        Long expiresAt = transactionTemplate.execute(status -> {
+            Order order = entityManager.find(Order.class, orderUuid);
+            if (order == null || order.getStatus() != OrderStatus.AWAITING_APPROVAL) {
+                return null;
+            }
+            List<InventoryHold> holds = getHolds(orderUuid);
+            // already held, or held until it expired while the order kept awaiting approval
+            if (!holds.isEmpty()) {
+                return holds.stream()
+                        .filter(hold -> !hold.isReleased())
+                        .map(InventoryHold::getExpiresAt)
+                        .min(Long::compare)
+                        .orElse(null);
+            }
+
+            List<OrderItem> orderItems = getOrderItems(orderUuid);
+            long deadline = keptDeadline != null ? keptDeadline : System.currentTimeMillis() + ttlMillis;
+            for (OrderItem orderItem : orderItems) {
+                if (!inventoryStock.take(orderItem.getItemUuid(), orderItem.getQuantity())) {
+                    log.warn("Stock of order [{}] can't be held, item [{}] has less than {} units available!",
+                            orderUuid, orderItem.getItemUuid(), orderItem.getQuantity());
+                    status.setRollbackOnly();
+                    return null;
+                }
+                InventoryHold hold = new InventoryHold();
+                hold.setOrderUuid(orderUuid);
+                hold.setItemUuid(orderItem.getItemUuid());
+                hold.setQuantity(orderItem.getQuantity());
+                hold.setExpiresAt(deadline);
+                entityManager.persist(hold);
+            }
+            return orderItems.isEmpty() ? null : deadline;
+        });
+
+        if (expiresAt != null) {
+            wheel.schedule(orderUuid, expiresAt);
+        }
+    }
+
+    private void resolve(String orderUuid) {
+        Long expiresAt = transactionTemplate.execute(status -> {
+            List<InventoryHold> holds = getHolds(orderUuid);
+            if (holds.isEmpty()) {
+                return null;
+            }
+            Order order = entityManager.find(Order.class, orderUuid);
+            OrderStatus orderStatus = order != null ? order.getStatus() : null;
+
+            if (orderStatus == OrderStatus.AWAITING_APPROVAL) {
+                long now = System.currentTimeMillis();
+                for (InventoryHold hold : holds) {
+                    if (!hold.isReleased() && hold.getExpiresAt() > now) {
+                        return hold.getExpiresAt();
+                    }
+                }
+                for (InventoryHold hold : holds) {
+                    if (!hold.isReleased()) {
+                        inventoryStock.giveBack(hold.getItemUuid(), hold.getQuantity());
+                        hold.setReleased(true);
+                    }
+                }
+                return null;
+            }
+
+            // the stock of an approved order stays taken, the hold only ends
+            for (InventoryHold hold : holds) {
+                if (orderStatus != OrderStatus.APPROVED && !hold.isReleased()) {
+                    inventoryStock.giveBack(hold.getItemUuid(), hold.getQuantity());
+                }
+                entityManager.remove(hold);
+            }
+            return null;
+        });
+
+        if (expiresAt != null) {
+            wheel.schedule(orderUuid, expiresAt);
+        } else {
+            wheel.cancel(orderUuid);
+        }
+    }
+
+    // gives back the holds of an order whose items no longer match them, and holds its items again
+    private void rehold(String orderUuid) {
+        Long keptDeadline = transactionTemplate.execute(status -> {
+            List<InventoryHold> holds = getHolds(orderUuid);
+            // not held yet, or expired, which stays so while the order awaits approval
+            if (holds.isEmpty() || holds.stream().anyMatch(InventoryHold::isReleased)) {
+                return null;
+            }
+            Order order = entityManager.find(Order.class, orderUuid);
+            if (order == null || order.getStatus() != OrderStatus.AWAITING_APPROVAL) {
+                return null;
+            }
+            if (toQuantities(holds, InventoryHold::getItemUuid, InventoryHold::getQuantity)
+                    .equals(toQuantities(getOrderItems(orderUuid), OrderItem::getItemUuid, OrderItem::getQuantity))) {
+                return null;
+            }
+
+            for (InventoryHold hold : holds) {
+                inventoryStock.giveBack(hold.getItemUuid(), hold.getQuantity());
+                entityManager.remove(hold);
+            }
+            return holds.stream().mapToLong(InventoryHold::getExpiresAt).min().getAsLong();
+        });
+        hold(orderUuid, keptDeadline);
+    }
+
+    private static <E> Map<String, Integer> toQuantities(List<E> rows, Function<E, String> itemUuid, ToIntFunction<E> quantity) {
+        Map<String, Integer> quantities = new HashMap<>();
+        for (E row : rows) {
+            quantities.merge(itemUuid.apply(row), quantity.applyAsInt(row), Integer::sum);
+        }
+        return quantities;
+    }
+
+    // schedules every pending hold and resolves or creates the holds of orders changed behind our back
+    private void reconcile() {
+        List<Object[]> pendingHolds = transactionTemplate.execute(status -> entityManager
+                .createQuery("SELECT h.orderUuid, MIN(h.expiresAt) FROM InventoryHold h WHERE h.released = false GROUP BY h.orderUuid", Object[].class)
+                .getResultList());
+        for (Object[] pendingHold : pendingHolds) {
+            wheel.schedule((String) pendingHold[0], (Long) pendingHold[1]);
+        }
+        // items may have been written in bulk
+        for (Object[] pendingHold : pendingHolds) {
+            rehold((String) pendingHold[0]);
+        }
+
+        List<String> resolvable = transactionTemplate.execute(status -> entityManager
+                .createQuery("SELECT DISTINCT h.orderUuid FROM InventoryHold h WHERE NOT EXISTS ("
+                        + "SELECT o FROM " + ORDER_ENTITY + " o WHERE o.uuid = h.orderUuid AND o.status = :status)", String.class)
+                .setParameter("status", OrderStatus.AWAITING_APPROVAL)
+                .getResultList());
+        resolvable.forEach(this::resolve);
+
+        List<String> unheld = transactionTemplate.execute(status -> entityManager
+                .createQuery("SELECT o.uuid FROM " + ORDER_ENTITY + " o WHERE o.status = :status AND NOT EXISTS ("
+                        + "SELECT h FROM InventoryHold h WHERE h.orderUuid = o.uuid)", String.class)
+                .setParameter("status", OrderStatus.AWAITING_APPROVAL)
+                .getResultList());
+        unheld.forEach(this::hold);
+    }
+
+    private List<OrderItem> getOrderItems(String orderUuid) {
+        return entityManager
+                .createQuery("SELECT i FROM OrderItem i WHERE i.orderUuid = :orderUuid", OrderItem.class)
+                .setParameter("orderUuid", orderUuid)
+                .getResultList();
+    }
+
+    private List<InventoryHold> getHolds(String orderUuid) {
+        return entityManager
+                .createQuery("SELECT h FROM InventoryHold h WHERE h.orderUuid = :orderUuid", InventoryHold.class)
+                .setParameter("orderUuid", orderUuid)
+                .getResultList();
+    }
+}
@@ -8,12 +8,18 @@ import com.opencsv.CSVWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 public class CsvUtils {
 
-    public static void writeCsv(Writer out, List<Order> orders) throws IOException {
+    // writes the orders as they are read, the header is flushed right away so the response starts at once
+    public static void writeCsv(Writer out, Iterator<Order> orders) throws IOException {
 
         String header[] = {
                 "uuid",
@@ -24,17 +30,55 @@ public class CsvUtils {
 
         CSVWriter csv = new CSVWriter(out);
         csv.writeNext(header, false);
+        csv.flush();
 
-        for (Order order : orders) {
+        while (orders.hasNext()) {
+            Order order = orders.next();
             String[] cols = {
                     order.getUuid(),
-                    order.getSubmittedDate().toString(),
-                    order.getDeadlineDate().toString(),
-                    order.getStatus().name()
+                    toString(order.getSubmittedDate()),
+                    toString(order.getDeadlineDate()),
+                    order.getStatus() != null ? order.getStatus().name() : ""
             };
             csv.writeNext(cols, false);
         }
-        csv.close();
+        csv.flush();
+    }
+
+    private static String toString(LocalDate date) {
+        return date != null ? date.toString() : "";
+    }
+
+    // reads the rows lazily, so only the current row of the csv is held in memory
+    public static Iterator<String[]> readRows(Reader in) {
+        CSVReader csvReader = new CSVReaderBuilder(in).build();
+        return new Iterator<>() {
+
+            private String[] next = readNext(csvReader);
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public String[] next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                String[] current = next;
+                next = readNext(csvReader);
+                return current;
+            }
+        };
+    }
+
+    private static String[] readNext(CSVReader csvReader) {
+        try {
+            return csvReader.readNext();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public static String extractCsvFileContentAsString(File file) {
@@ -2,35 +2,72 @@ package com.kelvin.smartwarehouse.utils;
 
 import com.kelvin.smartwarehouse.model.Order;
 import com.kelvin.smartwarehouse.model.enums.OrderStatus;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.usermodel.DateUtil;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.ss.util.NumberToTextConverter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFComment;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
 
 public class XlsxUtils {
 
-    public static void writeXlsx(File file, List<Order> orders) throws IOException {
+    private static final int ROW_ACCESS_WINDOW_SIZE = 100;
 
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Orders");
+    private static final String DATE_FORMAT = "yyyy-mm-dd";
 
-        createHeaderRow(sheet);
+    /**
+     * Writes the orders as they are read, with only a sliding window of rows kept on the heap, the rows
+     * before it are flushed to compressed temp files which are deleted once the workbook is written.
+     */
+    public static void writeXlsx(OutputStream out, Iterator<Order> orders) throws IOException {
 
-        for (int i = 0; i < orders.size(); i++) {
-            createDataRow(sheet, orders.get(i), i + 1);
-        }
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW_SIZE);
+        workbook.setCompressTempFiles(true);
+        try {
+            Sheet sheet = workbook.createSheet("Orders");
+
+            // cell styles are stored once per workbook, so every date cell shares this one
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat(DATE_FORMAT));
 
-        FileOutputStream outputStream = new FileOutputStream(file);
-        workbook.write(outputStream);
-        workbook.close();
+            createHeaderRow(sheet);
+
+            int index = 1;
+            while (orders.hasNext()) {
+                createDataRow(sheet, orders.next(), index++, dateStyle);
+            }
+
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
     }
 
     private static void createHeaderRow(Sheet sheet) {
@@ -48,13 +85,13 @@ public class XlsxUtils {
         }
     }
 
-    private static void createDataRow(Sheet sheet, Order order, int index) {
+    private static void createDataRow(Sheet sheet, Order order, int index, CellStyle dateStyle) {
         Row row = sheet.createRow(index);
 
         createUuidCell(row, 0, order.getUuid());
 
-        createSubmittedDateCell(row, 1, order.getSubmittedDate());
-        createDeadlineDateCell(row, 2, order.getDeadlineDate());
+        createSubmittedDateCell(row, 1, order.getSubmittedDate(), dateStyle);
+        createDeadlineDateCell(row, 2, order.getDeadlineDate(), dateStyle);
 
         createOrderStatusCell(row, 3, order.getStatus());
     }
@@ -64,19 +101,108 @@ public class XlsxUtils {
         cell.setCellValue(order);
     }
 
-    private static void createSubmittedDateCell(Row row, int i, LocalDate submittedDate) {
+    private static void createSubmittedDateCell(Row row, int i, LocalDate submittedDate, CellStyle dateStyle) {
         Cell cell = row.createCell(i);
         cell.setCellValue(submittedDate);
+        cell.setCellStyle(dateStyle);
     }
 
-    private static void createDeadlineDateCell(Row row, int i, LocalDate deadlineDate) {
+    private static void createDeadlineDateCell(Row row, int i, LocalDate deadlineDate, CellStyle dateStyle) {
         Cell cell = row.createCell(i);
         cell.setCellValue(deadlineDate);
+        cell.setCellStyle(dateStyle);
     }
 
     private static void createOrderStatusCell(Row row, int i, OrderStatus status) {
         Cell cell = row.createCell(i);
-        cell.setCellValue(status.name());
+        cell.setCellValue(status != null ? status.name() : null);
+    }
+
+    /**
+     * Pushes the rows of the first sheet to the consumer as they are parsed by POI's event model,
+     * so only the shared strings and the current row are held in memory, whatever the size of the sheet.
+     * Dates are read as yyyy-MM-dd and numbers as their raw value, skipped rows as empty arrays.
+     */
+    public static void readRows(File file, Consumer<String[]> rowConsumer) throws Exception {
+        try (OPCPackage workbookPackage = OPCPackage.open(file, PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(workbookPackage);
+            ReadOnlySharedStringsTable sharedStrings = new ReadOnlySharedStringsTable(workbookPackage, false);
+            StylesTable styles = reader.getStylesTable();
+
+            Iterator<InputStream> sheets = reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader sheetParser = XMLHelper.newXMLReader();
+                sheetParser.setContentHandler(new XSSFSheetXMLHandler(
+                        styles, null, sharedStrings, new RowHandler(rowConsumer), new RawValueFormatter(), false));
+                sheetParser.parse(new InputSource(sheet));
+            }
+        }
+    }
+
+    private static class RowHandler implements XSSFSheetXMLHandler.SheetContentsHandler {
+
+        private final Consumer<String[]> rowConsumer;
+        private final List<String> values = new ArrayList<>();
+        private int nextRowNum;
+        private int nextColumn;
+
+        private RowHandler(Consumer<String[]> rowConsumer) {
+            this.rowConsumer = rowConsumer;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            // rows without cells aren't in the sheet, they still count as lines of the file
+            for (; nextRowNum < rowNum; nextRowNum++) {
+                rowConsumer.accept(new String[0]);
+            }
+            values.clear();
+            nextColumn = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            rowConsumer.accept(values.toArray(new String[0]));
+            nextRowNum = rowNum + 1;
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? toColumnIndex(cellReference) : nextColumn;
+            while (values.size() < column) {
+                values.add(null);
+            }
+            values.add(formattedValue);
+            nextColumn = column + 1;
+        }
+    }
+
+    // the letters of a reference such as AB12, without the allocations of CellReference
+    private static int toColumnIndex(String cellReference) {
+        int column = 0;
+        for (int i = 0; i < cellReference.length(); i++) {
+            char c = cellReference.charAt(i);
+            if (c < 'A' || c > 'Z') {
+                break;
+            }
+            column = column * 26 + (c - 'A' + 1);
+        }
+        return column - 1;
+    }
+
+    private static class RawValueFormatter extends DataFormatter {
+
+        @Override
+        public String formatRawCellContents(double value, int formatIndex, String formatString) {
+            if (DateUtil.isADateFormat(formatIndex, formatString) && DateUtil.isValidExcelDate(value)) {
+                LocalDateTime dateTime = DateUtil.getLocalDateTime(value);
+                return dateTime.toLocalTime().equals(LocalTime.MIDNIGHT) ? dateTime.toLocalDate().toString() : dateTime.toString();
+            }
+            return NumberToTextConverter.toText(value);
+        }
     }
 
     public static String extractExelFileContentAsString(File file) {
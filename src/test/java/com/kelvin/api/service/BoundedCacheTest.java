@@ -0,0 +1,68 @@
+package com.kelvin.api.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BoundedCacheTest {
+
+    @Test
+    void givenFullCache_whenPut_thenShouldEvictLeastRecentlyUsedEntry() {
+        //given
+        BoundedCache<String, Integer> cache = new BoundedCache<>(2, 60_000);
+        cache.put("a", 1, cache.getGeneration());
+        cache.put("b", 2, cache.getGeneration());
+        //reading a makes b the least recently used entry
+        assertThat(cache.get("a")).isEqualTo(1);
+
+        //when
+        cache.put("c", 3, cache.getGeneration());
+
+        //then
+        assertThat(cache.getSize()).isEqualTo(2);
+        assertThat(cache.get("b")).isNull();
+        assertThat(cache.get("a")).isEqualTo(1);
+        assertThat(cache.get("c")).isEqualTo(3);
+        assertThat(cache.getEvictions()).isEqualTo(1);
+    }
+
+    @Test
+    void givenCachedEntry_whenTtlPasses_thenShouldMissAndDropIt() throws Exception {
+        //given
+        BoundedCache<String, Integer> cache = new BoundedCache<>(10, 50);
+        cache.put("a", 1, cache.getGeneration());
+        assertThat(cache.get("a")).isEqualTo(1);
+
+        //when
+        Thread.sleep(100);
+
+        //then
+        assertThat(cache.get("a")).isNull();
+        assertThat(cache.getSize()).isZero();
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void givenValueLoadedBeforeInvalidation_whenPut_thenShouldNotBeStored() {
+        //given
+        BoundedCache<String, Integer> cache = new BoundedCache<>(10, 60_000);
+        long generation = cache.getGeneration();
+
+        //when
+        //a write invalidates the cache while the value is being loaded
+        cache.invalidateAll();
+        cache.put("a", 1, generation);
+
+        //then
+        assertThat(cache.get("a")).isNull();
+
+        cache.put("a", 2, cache.getGeneration());
+        assertThat(cache.get("a")).isEqualTo(2);
+
+        generation = cache.getGeneration();
+        cache.invalidate("b");
+        cache.put("a", 3, generation);
+        assertThat(cache.get("a")).isEqualTo(2);
+    }
+}
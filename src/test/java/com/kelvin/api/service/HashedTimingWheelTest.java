@@ -0,0 +1,116 @@
+package com.kelvin.api.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HashedTimingWheelTest {
+
+    private static final long TICK_MILLIS = 10;
+
+    private final BlockingQueue<Expiry> expiries = new LinkedBlockingQueue<>();
+
+    private HashedTimingWheel<String> wheel;
+
+    @AfterEach
+    void close() {
+        if (wheel != null) {
+            wheel.close();
+        }
+    }
+
+    @Test
+    void givenScheduledKey_whenDeadlinePasses_thenShouldExpireOnceAndNotBeforeDeadline() throws Exception {
+        //given
+        wheel = buildWheel(8);
+        long deadline = System.currentTimeMillis() + 50;
+
+        //when
+        wheel.schedule("order-1", deadline);
+
+        //then
+        assertThat(wheel.contains("order-1")).isTrue();
+        Expiry expiry = expiries.poll(1, TimeUnit.SECONDS);
+        assertThat(expiry).isNotNull();
+        assertThat(expiry.key).isEqualTo("order-1");
+        assertThat(expiry.time).isGreaterThanOrEqualTo(deadline);
+        assertThat(wheel.contains("order-1")).isFalse();
+        assertThat(wheel.getSize()).isZero();
+        assertThat(expiries.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    void givenScheduledKeys_whenOneIsCancelled_thenShouldExpireOnlyTheOther() throws Exception {
+        //given
+        wheel = buildWheel(8);
+        long deadline = System.currentTimeMillis() + 50;
+        wheel.schedule("order-1", deadline);
+        wheel.schedule("order-2", deadline);
+
+        //when
+        wheel.cancel("order-1");
+
+        //then
+        assertThat(wheel.contains("order-1")).isFalse();
+        Expiry expiry = expiries.poll(1, TimeUnit.SECONDS);
+        assertThat(expiry).isNotNull();
+        assertThat(expiry.key).isEqualTo("order-2");
+        assertThat(expiries.poll(100, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(wheel.getSize()).isZero();
+    }
+
+    @Test
+    void givenDeadlineSeveralRoundsAhead_whenScheduled_thenShouldExpireOnlyAfterAllRounds() throws Exception {
+        //given
+        //a wheel of 4 buckets turns once every 40ms, so the deadline is 5 rounds away
+        wheel = buildWheel(4);
+        long deadline = System.currentTimeMillis() + 200;
+
+        //when
+        wheel.schedule("order-1", deadline);
+
+        //then
+        Expiry expiry = expiries.poll(2, TimeUnit.SECONDS);
+        assertThat(expiry).isNotNull();
+        assertThat(expiry.key).isEqualTo("order-1");
+        assertThat(expiry.time).isGreaterThanOrEqualTo(deadline);
+    }
+
+    @Test
+    void givenScheduledKey_whenRescheduled_thenShouldExpireOnlyAtTheNewDeadline() throws Exception {
+        //given
+        wheel = buildWheel(8);
+        wheel.schedule("order-1", System.currentTimeMillis() + 30);
+
+        //when
+        long deadline = System.currentTimeMillis() + 150;
+        wheel.schedule("order-1", deadline);
+
+        //then
+        Expiry expiry = expiries.poll(2, TimeUnit.SECONDS);
+        assertThat(expiry).isNotNull();
+        assertThat(expiry.time).isGreaterThanOrEqualTo(deadline);
+        assertThat(expiries.poll(100, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    private HashedTimingWheel<String> buildWheel(int wheelSize) {
+        return new HashedTimingWheel<>("test-wheel", TICK_MILLIS, wheelSize,
+                key -> expiries.add(new Expiry(key, System.currentTimeMillis())), Runnable::run);
+    }
+
+    private static class Expiry {
+
+        private final String key;
+        private final long time;
+
+        private Expiry(String key, long time) {
+            this.key = key;
+            this.time = time;
+        }
+    }
+}
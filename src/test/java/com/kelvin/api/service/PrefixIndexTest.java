@@ -0,0 +1,86 @@
+package com.kelvin.api.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PrefixIndexTest {
+
+    @Test
+    void givenIndexedValues_whenFind_thenShouldReturnMatchesOrderedByNormalizedValueUpToLimit() {
+        //given
+        PrefixIndex index = new PrefixIndex();
+        index.put("1", "Canada Lettuce");
+        index.put("2", "California Greenbrier");
+        index.put("3", "Carolina Puccoon");
+        index.put("4", "Ozark Grass");
+
+        //when
+        List<PrefixIndex.Match> matches = index.find("CA", 2);
+
+        //then
+        assertThat(toValues(matches)).containsExactly("California Greenbrier", "Canada Lettuce");
+        assertThat(matches.get(0).getId()).isEqualTo("2");
+        assertThat(toValues(index.find("ca", 10))).hasSize(3);
+        assertThat(index.find("cb", 10)).isEmpty();
+    }
+
+    @Test
+    void givenValuesWithAccentsAndWhitespace_whenFind_thenShouldIgnoreCaseAccentsAndWhitespaceRuns() {
+        //given
+        PrefixIndex index = new PrefixIndex();
+        index.put("1", "Érable  Rouge");
+        index.put("2", "Crème Brûlée");
+
+        //when
+        //then
+        assertThat(toValues(index.find("erable r", 10))).containsExactly("Érable  Rouge");
+        assertThat(toValues(index.find("  ÉRABLE", 10))).containsExactly("Érable  Rouge");
+        assertThat(toValues(index.find("creme bru", 10))).containsExactly("Crème Brûlée");
+        assertThat(PrefixIndex.normalize(" Crème   Brûlée ")).isEqualTo("creme brulee");
+    }
+
+    @Test
+    void givenIndexedValue_whenPutAgainOrRemoved_thenShouldOnlyFindCurrentValue() {
+        //given
+        PrefixIndex index = new PrefixIndex();
+        index.put("1", "Ozark Grass");
+
+        //when
+        index.put("1", "Western Grasswort");
+
+        //then
+        assertThat(index.find("ozark", 10)).isEmpty();
+        assertThat(toValues(index.find("western", 10))).containsExactly("Western Grasswort");
+        assertThat(index.getSize()).isEqualTo(1);
+
+        index.put("1", null);
+        assertThat(index.find("western", 10)).isEmpty();
+        assertThat(index.getSize()).isZero();
+
+        index.put("2", "Ozark Grass");
+        index.remove("2");
+        assertThat(index.find("ozark", 10)).isEmpty();
+    }
+
+    @Test
+    void givenEqualValues_whenFind_thenShouldReturnEachOrderedById() {
+        //given
+        PrefixIndex index = new PrefixIndex();
+        index.put("b", "Ozark Grass");
+        index.put("a", "ozark grass");
+
+        //when
+        List<PrefixIndex.Match> matches = index.find("ozark", 10);
+
+        //then
+        assertThat(matches.stream().map(PrefixIndex.Match::getId).collect(Collectors.toList())).containsExactly("a", "b");
+    }
+
+    private static List<String> toValues(List<PrefixIndex.Match> matches) {
+        return matches.stream().map(PrefixIndex.Match::getValue).collect(Collectors.toList());
+    }
+}
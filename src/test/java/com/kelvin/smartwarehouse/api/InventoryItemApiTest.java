@@ -2,21 +2,36 @@ package com.kelvin.smartwarehouse.api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.kelvin.smartwarehouse.exception.EntityWithIdNotFoundException;
+import com.kelvin.smartwarehouse.exception.InsufficientQuantityException;
 import com.kelvin.smartwarehouse.exception.InvalidParameterException;
 import com.kelvin.smartwarehouse.model.InventoryItem;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.SqlGroup;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static com.kelvin.smartwarehouse.management.AppConstants.INVENTORY_ITEMS_URL;
 import static com.kelvin.smartwarehouse.managment.TestConstants.*;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.hamcrest.Matchers.closeTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -25,6 +40,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@TestPropertySource(properties = "api.reservation.ledger.enabled=true")
 @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = INVENTORY_ITEMS_SCHEMA_SCRIPT)
 public class InventoryItemApiTest {
 
@@ -216,6 +232,41 @@ public class InventoryItemApiTest {
                 .andExpect(jsonPath("$.packageVolume", is(8462.38)));
     }
 
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSqlAndIds_whenMultiGet_thenOkAndShouldReturnItemsInRequestOrder() throws Exception {
+
+        //given
+        String ids = "0555f550-fef4-4747-872e-54e4f2aa809e,IdNotPresentInDb,c455da23-fe31-43a5-b7fe-5420d1df4fa0";
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "/_mget?ids={ids}", ids)
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(3)))
+                .andExpect(jsonPath("$.[0].id", is("0555f550-fef4-4747-872e-54e4f2aa809e")))
+                .andExpect(jsonPath("$.[0].found", is(true)))
+                .andExpect(jsonPath("$.[0].entity.name", is("Freycinetia")))
+                .andExpect(jsonPath("$.[1].id", is("IdNotPresentInDb")))
+                .andExpect(jsonPath("$.[1].found", is(false)))
+                .andExpect(jsonPath("$.[1].entity").doesNotExist())
+                .andExpect(jsonPath("$.[2].id", is("c455da23-fe31-43a5-b7fe-5420d1df4fa0")))
+                .andExpect(jsonPath("$.[2].entity.name", is("Carolina Yelloweyed Grass")));
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/_mget")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[\"c455da23-fe31-43a5-b7fe-5420d1df4fa0\"]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.[0].found", is(true)));
+    }
+
     @Test
     @Order(2)
     @SqlGroup({
@@ -271,6 +322,82 @@ public class InventoryItemApiTest {
 
     }
 
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenCachedInventoryItem_whenUpdate_thenGetByIdShouldReturnUpdatedInventoryItem() throws Exception {
+
+        //given
+        String id = "e8320e39-f185-4044-87df-8a7de39c0058";
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("Oak Mistletoe")));
+
+        String requestBody = "{\n" +
+                "    \"uuid\" : \"e8320e39-f185-4044-87df-8a7de39c0058\",\n" +
+                "    \"name\" : \"Oak Mistletoe Updated\",\n" +
+                "    \"quantity\" : 6534, \n" +
+                "    \"unitPrice\" : 84.71, \n" +
+                "    \"packageVolume\" : 234.97 \n" +
+                "}";
+
+        //when
+        this.mockMvc.perform(
+                        put(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(requestBody))
+                .andExpect(status().isOk());
+
+        //then
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("Oak Mistletoe Updated")));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSqlAndBodyWithOtherId_whenUpdate_thenBadRequestAndShouldNotUpdateEither() throws Exception {
+
+        //given
+        String id = "b43ec1ac-fa8b-49d0-b947-c1e349496edf";
+        String otherId = "e8320e39-f185-4044-87df-8a7de39c0058";
+        String requestBody = "{\n" +
+                "    \"uuid\" : \"" + otherId + "\",\n" +
+                "    \"name\" : \"Texan Hogplum Updated\",\n" +
+                "    \"quantity\" : 8656, \n" +
+                "    \"unitPrice\" : 8060.56, \n" +
+                "    \"packageVolume\" : 8500.00 \n" +
+                "}";
+
+        //when
+        this.mockMvc.perform(
+                        put(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(requestBody))
+                //then
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InvalidParameterException))
+                .andExpect(result -> assertThat(result.getResolvedException().getMessage())
+                        .isEqualTo(String.format("Id [%s] of the body doesn't match the id [%s] of the path!", otherId, id)));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", otherId)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("Oak Mistletoe")));
+    }
+
     @Test
     @Order(2)
     void givenEmptyListAndIdAndInventoryItem_whenUpdate_thenOkStatusAndShouldCreateNewInventoryItem() throws Exception {
@@ -351,6 +478,33 @@ public class InventoryItemApiTest {
     }
 
     //filters
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenSeedDataFromImportSql_whenGetAllWithLikeAndILikeNameFilter_thenOkAndOnlyILikeShouldIgnoreCase() throws Exception {
+        //given
+        //we have the import-entity.sql script file loaded
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "?like.name=Grass")
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(header().string("listSize", "3"));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "?ilike.name=GRASS")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("listSize", "4"))
+                .andExpect(jsonPath("$.[3].uuid", is("5ef8bf6d-acf2-4769-bf7c-17ce58c7040d")));
+
+    }
+
     @Test
     @Order(2)
     @SqlGroup({
@@ -814,4 +968,510 @@ public class InventoryItemApiTest {
                 .andExpect(jsonPath("$.[0].packageVolume", is(392.44)));
 
     }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenSeedDataFromImportSql_whenAggregateSumOfProduct_thenOkAndShouldReturnStockValue() throws Exception {
+        //given
+        //we have the import-entity.sql script file loaded
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "/_aggregate?sum=quantity*unitPrice&max=quantity&count&eq.quantity=8958")
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$.[0].['sum(quantity*unitPrice)']", closeTo(17421070.5, 0.001)))
+                .andExpect(jsonPath("$.[0].['max(quantity)']", is(8958)))
+                .andExpect(jsonPath("$.[0].count", is(1)));
+
+    }
+
+    @Test
+    @Order(2)
+    void whenAggregateSumOfNonNumericField_thenBadRequest() throws Exception {
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "/_aggregate?sum=name")
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isBadRequest());
+
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenSeedDataFromImportSql_whenSuggestByPrefix_thenOkAndShouldReturnTopMatchesOrderedByName() throws Exception {
+        //given
+        //we have the import-entity.sql script file loaded
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "/suggest?prefix=CA&limit=3")
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(3)))
+                .andExpect(jsonPath("$.[0].uuid", is("00195d46-8f54-4536-a7af-7df9d332a5fb")))
+                .andExpect(jsonPath("$.[0].name", is("California Greenbrier")))
+                .andExpect(jsonPath("$.[1].name", is("Canada Lettuce")))
+                .andExpect(jsonPath("$.[2].name", is("Carolina Puccoon")));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "/suggest?prefix=ca_")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(0)));
+
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenItemNameWithAccents_whenSuggestByPrefixWithoutAccents_thenShouldMatchAsPrefixIndexWould() throws Exception {
+        //given
+        InventoryItem inventoryItem = new InventoryItem();
+        inventoryItem.setName("Érable Rouge");
+        inventoryItem.setQuantity(5);
+        inventoryItem.setUnitPrice(5);
+        inventoryItem.setPackageVolume(5);
+        this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(inventoryItem)))
+                .andExpect(status().isOk());
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "/suggest").param("prefix", "erable r")
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$.[0].name", is("Érable Rouge")));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "/suggest").param("prefix", " ÉRABLE")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenSeedDataFromImportSqlAndId_whenMergePatchWithNegativeQuantity_thenBadRequestAndShouldNotUpdate() throws Exception {
+        //given
+        String id = "c41fbe24-5e1a-41d6-8bdd-de9a0c3df1e7";
+
+        //when
+        this.mockMvc.perform(
+                        patch(apiUrl + "/{id}", id)
+                                .contentType("application/merge-patch+json")
+                                .content("{\"quantity\" : -5}"))
+                //then
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InvalidParameterException))
+                .andExpect(result -> assertThat(result.getResolvedException().getMessage())
+                        .isEqualTo("Inventory item quantity should be a positive number!"));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.quantity", is(6104)));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenSeedDataFromImportSql_whenPatchByFiltersWithNegativeQuantity_thenBadRequestAndShouldNotUpdateAnyRow() throws Exception {
+        //given
+        String requestBody = "{\"quantity\" : -5}";
+
+        //when
+        this.mockMvc.perform(
+                        patch(apiUrl + "?ilike.name=grass")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(requestBody))
+                //then
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InvalidParameterException))
+                .andExpect(result -> assertThat(result.getResolvedException().getMessage())
+                        .isEqualTo("Inventory item quantity should be a positive number!"));
+
+        this.mockMvc.perform(
+                        patch(apiUrl + "?ilike.name=grass&dryRun=true")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(requestBody))
+                .andExpect(status().isBadRequest());
+
+        this.mockMvc.perform(
+                        get(apiUrl + "?ilike.name=grass")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("listSize", "4"));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "?ilike.name=grass&lt.quantity=1")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("listSize", "0"));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenSeedDataFromImportSqlAndId_whenMergePatch_thenShouldUpdateOnlyPatchedFields() throws Exception {
+        //given
+        String id = "c41fbe24-5e1a-41d6-8bdd-de9a0c3df1e7";
+
+        //when
+        this.mockMvc.perform(
+                        patch(apiUrl + "/{id}", id)
+                                .contentType("application/merge-patch+json")
+                                .content("{\"quantity\" : 42}"))
+                .andExpect(status().isNoContent());
+
+        //then
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.name", is("Canada Lettuce")))
+                .andExpect(jsonPath("$.quantity", is(42)));
+
+        this.mockMvc.perform(
+                        patch(apiUrl + "/{id}", "IdNotPresentInDb")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"quantity\" : 42}"))
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof EntityWithIdNotFoundException));
+
+        this.mockMvc.perform(
+                        patch(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"quantity\" : null}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = {DELETE_IMPORT_INVENTORY_STATEMENT, DELETE_INVENTORY_RESERVATIONS_STATEMENT})
+    })
+    void givenSeedDataFromImportSqlAndId_whenReserveAndRelease_thenShouldNeverReserveMoreThanAvailable() throws Exception {
+        //given
+        String id = "dc352628-5145-497b-a5d6-6ecb8d814beb";
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/reserve?quantity=5000", id))
+                .andExpect(status().isNoContent());
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/reserve?quantity=796", id))
+                .andExpect(status().isConflict())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InsufficientQuantityException))
+                .andExpect(jsonPath("$.message", is(String.format("Inventory item with id [%s] has 795 units available, 796 were requested!", id))));
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/release?quantity=5", id))
+                .andExpect(status().isNoContent());
+
+        //then
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.quantity", is(800)));
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/reserve?quantity=1", "IdNotPresentInDb"))
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof EntityWithIdNotFoundException));
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/reserve?quantity=0", id))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = {DELETE_IMPORT_INVENTORY_STATEMENT, DELETE_INVENTORY_RESERVATIONS_STATEMENT})
+    })
+    void givenReservation_whenReleaseMoreThanReserved_thenConflictAndStockShouldNotGrow() throws Exception {
+        //given
+        String id = "dc352628-5145-497b-a5d6-6ecb8d814beb";
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/reserve?quantity=100", id))
+                .andExpect(status().isNoContent());
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/release?quantity=101", id))
+                //then
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message", is(String.format("Inventory item with id [%s] has 100 units reserved, 101 were released!", id))));
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/release?quantity=100", id))
+                .andExpect(status().isNoContent());
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/release?quantity=1", id))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message", is(String.format("Inventory item with id [%s] has 0 units reserved, 1 were released!", id))));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.quantity", is(5795)));
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/release?quantity=1", "IdNotPresentInDb"))
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof EntityWithIdNotFoundException));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = {DELETE_IMPORT_INVENTORY_STATEMENT, DELETE_INVENTORY_RESERVATIONS_STATEMENT})
+    })
+    void givenConcurrentReservesAndReleases_whenOfSameItem_thenShouldAllSucceedAndKeepCountsInStep() throws Exception {
+        //given
+        String id = "dc352628-5145-497b-a5d6-6ecb8d814beb";
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/reserve?quantity=1000", id))
+                .andExpect(status().isNoContent());
+
+        //every task reserves 10 units and releases them again, 10 times
+        Callable<Integer> reserveAndRelease = () -> {
+            for (int i = 0; i < 10; i++) {
+                for (String action : new String[]{"reserve", "release"}) {
+                    int status = this.mockMvc.perform(
+                                    post(apiUrl + "/{id}/" + action + "?quantity=10", id))
+                            .andReturn().getResponse().getStatus();
+                    if (status != 204) {
+                        return status;
+                    }
+                }
+            }
+            return 204;
+        };
+
+        //when
+        List<Future<Integer>> statuses = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            for (int i = 0; i < 16; i++) {
+                statuses.add(executor.submit(reserveAndRelease));
+            }
+
+            //then
+            for (Future<Integer> status : statuses) {
+                assertThat(status.get()).isEqualTo(204);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.quantity", is(4795)));
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/release?quantity=1001", id))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message", is(String.format("Inventory item with id [%s] has 1000 units reserved, 1001 were released!", id))));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = {DELETE_IMPORT_INVENTORY_STATEMENT, DELETE_INVENTORY_RESERVATIONS_STATEMENT})
+    })
+    void givenConcurrentReservations_whenTheyExceedStock_thenShouldGrantOnlyWhatFitsAndReleaseAll() throws Exception {
+        //given
+        //5795 units, so 28 of the 32 reservations of 200 fit
+        String id = "dc352628-5145-497b-a5d6-6ecb8d814beb";
+        Callable<Integer> reservation = () -> this.mockMvc.perform(
+                        post(apiUrl + "/{id}/reserve?quantity=200", id))
+                .andReturn().getResponse().getStatus();
+
+        //when
+        List<Future<Integer>> statuses = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            for (int i = 0; i < 32; i++) {
+                statuses.add(executor.submit(reservation));
+            }
+            int granted = 0;
+            int rejected = 0;
+            for (Future<Integer> status : statuses) {
+                if (status.get() == 204) {
+                    granted++;
+                } else if (status.get() == 409) {
+                    rejected++;
+                }
+            }
+
+            //then
+            assertThat(granted).isEqualTo(28);
+            assertThat(rejected).isEqualTo(4);
+        } finally {
+            executor.shutdown();
+        }
+
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.quantity", is(195)));
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/release?quantity=5601", id))
+                .andExpect(status().isConflict())
+                .andExpect(jsonPath("$.message", is(String.format("Inventory item with id [%s] has 5600 units reserved, 5601 were released!", id))));
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/{id}/release?quantity=5600", id))
+                .andExpect(status().isNoContent());
+
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.quantity", is(5795)));
+    }
+
+    @Test
+    @Order(2)
+    @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    void givenXlsxWithInvalidRow_whenImport_thenShouldPersistValidRowsAndReportInvalidOne() throws Exception {
+        //given
+        byte[] content;
+        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            Sheet sheet = workbook.createSheet("Inventory items");
+            createRow(sheet, 0, "name", "quantity", "unitPrice", "packageVolume");
+            createRow(sheet, 1, "Winter Savory", 120, 2.5, 3);
+            createRow(sheet, 2, "Sweet Cicely", 0, 4, 1);
+            // row 3 is left out of the sheet
+            createRow(sheet, 4, "Sea Kale", 15, 12.75, 8);
+            workbook.write(out);
+            content = out.toByteArray();
+        }
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl + "/import?type=xlsx")
+                                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                                .content(content))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.imported", is(2)))
+                .andExpect(jsonPath("$.rejected", is(1)))
+                .andExpect(jsonPath("$.rejectedLines[0].line", is(3)))
+                .andExpect(jsonPath("$.rejectedLines[0].error", is("Inventory item quantity should be a positive number!")));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "?orderBy=name asc")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "2"))
+                .andExpect(jsonPath("$.[0].name", is("Sea Kale")))
+                .andExpect(jsonPath("$.[0].quantity", is(15)))
+                .andExpect(jsonPath("$.[0].unitPrice", is(12.75)))
+                .andExpect(jsonPath("$.[1].name", is("Winter Savory")));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSqlAndCatalogCsv_whenSync_thenShouldWriteOnlyNewAndChangedItems() throws Exception {
+        //given
+        String csv = "uuid,name,quantity,unitPrice,packageVolume\n"
+                + "90b60fd8-2763-4095-aee7-80d326f6a790,Heller's Grape,8958,1944.75,4050.26\n"
+                + "0555f550-fef4-4747-872e-54e4f2aa809e,Freycinetia,100,771.11,7625.02\n"
+                + "044ad906-ace4-4963-9ef7-53444f5584f8,Silver Linden,0,6632.28,9489.29\n"
+                + "5b7f7e32-1f0e-4a5e-9d55-0c1f4f1d2b10,Sea Kale,15,12.75,8\n"
+                + "6c8e8f43-2a5f-4b6e-8e66-1d2e3f4a5b6c,Sea Holly,-3,12.75,8\n";
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl + "/sync")
+                                .contentType("text/csv")
+                                .content(csv))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted", is(1)))
+                .andExpect(jsonPath("$.updated", is(2)))
+                .andExpect(jsonPath("$.unchanged", is(1)))
+                .andExpect(jsonPath("$.deleted", is(0)))
+                .andExpect(jsonPath("$.rejected", is(1)))
+                .andExpect(jsonPath("$.rejectedLines[0].line", is(6)))
+                .andExpect(jsonPath("$.rejectedLines[0].error", is("Inventory item quantity should not be negative!")));
+
+        //an item missing from the csv is kept, unless deleting them is asked for
+        this.mockMvc.perform(
+                        get(apiUrl + "?orderBy=name asc")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "101"));
+
+        this.mockMvc.perform(
+                        post(apiUrl + "/sync?deleteMissing=true")
+                                .contentType("text/csv")
+                                .content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.inserted", is(0)))
+                .andExpect(jsonPath("$.updated", is(0)))
+                .andExpect(jsonPath("$.unchanged", is(4)))
+                .andExpect(jsonPath("$.deleted", is(97)));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "?orderBy=name asc")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "4"))
+                .andExpect(jsonPath("$.[0].name", is("Freycinetia")))
+                .andExpect(jsonPath("$.[0].quantity", is(100)))
+                .andExpect(jsonPath("$.[2].name", is("Sea Kale")))
+                .andExpect(jsonPath("$.[3].name", is("Silver Linden")))
+                .andExpect(jsonPath("$.[3].quantity", is(0)));
+    }
+
+    private void createRow(Sheet sheet, int index, Object... values) {
+        Row row = sheet.createRow(index);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof Number) {
+                row.createCell(i).setCellValue(((Number) values[i]).doubleValue());
+            } else {
+                row.createCell(i).setCellValue(String.valueOf(values[i]));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,119 @@
+package com.kelvin.smartwarehouse.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kelvin.smartwarehouse.model.InventoryItem;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static com.kelvin.smartwarehouse.management.AppConstants.INVENTORY_ITEMS_URL;
+import static com.kelvin.smartwarehouse.managment.TestConstants.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "api.list-cache.enabled=true",
+        "api.list-cache.ttl-millis=" + InventoryItemListCacheApiTest.LIST_CACHE_TTL_MILLIS
+})
+@Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = INVENTORY_ITEMS_SCHEMA_SCRIPT)
+public class InventoryItemListCacheApiTest {
+
+    private final ObjectMapper objectMapper;
+    private final MockMvc mockMvc;
+    private final JdbcTemplate jdbcTemplate;
+
+    static final String apiUrl = INVENTORY_ITEMS_URL;
+
+    static final long LIST_CACHE_TTL_MILLIS = 300;
+
+    @Autowired
+    public InventoryItemListCacheApiTest(ObjectMapper mapper, MockMvc mockMvc, JdbcTemplate jdbcTemplate) {
+        this.objectMapper = mapper;
+        this.mockMvc = mockMvc;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    //every test uses filters of its own, the cached lists outlive the scripts resetting the table
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenCachedList_whenSameValuesAreSentAsOneOrAsRepeatedParameter_thenShouldNotShareCachedList() throws Exception {
+        //given
+        //the filter reads a single value, "Grass,Gentian" matches no name
+        expectListSize("?like.name=Grass,Gentian", "0");
+
+        //when
+        //only the first value of a repeated parameter is read
+        expectListSize("?like.name=Grass&like.name=Gentian", "3");
+
+        //then
+        expectListSize("?like.name=Grass,Gentian", "0");
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenCachedList_whenItemIsPosted_thenShouldInvalidateCachedList() throws Exception {
+        //given
+        expectListSize("?like.name=Zephyrus", "0");
+
+        //when
+        InventoryItem inventoryItem = new InventoryItem();
+        inventoryItem.setName("Zephyrus Lily");
+        inventoryItem.setQuantity(5);
+        inventoryItem.setUnitPrice(5);
+        inventoryItem.setPackageVolume(5);
+        this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(inventoryItem)))
+                .andExpect(status().isOk());
+
+        //then
+        expectListSize("?like.name=Zephyrus", "1");
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenCachedList_whenRowIsWrittenBehindTheApi_thenShouldServeCachedListUntilTtlPasses() throws Exception {
+        //given
+        expectListSize("?like.name=Lettuce", "1");
+
+        //when
+        jdbcTemplate.update("update inventory_items set name = 'Sea Lettuce' where uuid = ?", "c455da23-fe31-43a5-b7fe-5420d1df4fa0");
+
+        //then
+        expectListSize("?like.name=Lettuce", "1");
+        Thread.sleep(LIST_CACHE_TTL_MILLIS + 100);
+        expectListSize("?like.name=Lettuce", "2");
+    }
+
+    private void expectListSize(String query, String listSize) throws Exception {
+        this.mockMvc.perform(
+                        get(apiUrl + query)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("listSize", listSize));
+    }
+}
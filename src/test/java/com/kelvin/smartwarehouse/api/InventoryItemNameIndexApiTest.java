@@ -0,0 +1,202 @@
+package com.kelvin.smartwarehouse.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+import com.kelvin.smartwarehouse.model.InventoryItem;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static com.kelvin.smartwarehouse.management.AppConstants.INVENTORY_ITEMS_URL;
+import static com.kelvin.smartwarehouse.managment.TestConstants.*;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {"api.name-index.enabled=true", "api.suggest.enabled=true"})
+@Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = INVENTORY_ITEMS_SCHEMA_SCRIPT)
+public class InventoryItemNameIndexApiTest {
+
+    private final ObjectMapper objectMapper;
+    private final MockMvc mockMvc;
+    private final InventoryItemApi inventoryItemApi;
+
+    static final String apiUrl = INVENTORY_ITEMS_URL;
+
+    @Autowired
+    public InventoryItemNameIndexApiTest(ObjectMapper mapper, MockMvc mockMvc, InventoryItemApi inventoryItemApi) {
+        this.objectMapper = mapper;
+        this.mockMvc = mockMvc;
+        this.inventoryItemApi = inventoryItemApi;
+    }
+
+    //the scripts write straight to the database, which the index can't see, as a bulk write would
+    @BeforeEach
+    void invalidateNameIndex() {
+        inventoryItemApi.onBulkWrite();
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenSeedDataFromImportSql_whenGetAllWithLikeAndILikeNameFilter_thenShouldReturnSameRowsAsWithoutIndex() throws Exception {
+        //given
+        //we have the import-entity.sql script file loaded
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "?like.name=Grass")
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(header().string("listSize", "3"));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "?ilike.name=GRASS")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("listSize", "4"))
+                .andExpect(jsonPath("$.[3].uuid", is("5ef8bf6d-acf2-4769-bf7c-17ce58c7040d")));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenBuiltIndex_whenItemIsPostedRenamedAndDeleted_thenIlikeShouldFollowEachWrite() throws Exception {
+        //given
+        expectIlikeListSize("zephyrus", "0");
+
+        //when
+        InventoryItem inventoryItem = new InventoryItem();
+        inventoryItem.setName("Zephyrus Lily");
+        inventoryItem.setQuantity(5);
+        inventoryItem.setUnitPrice(5);
+        inventoryItem.setPackageVolume(5);
+        MvcResult mvcResult = this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(inventoryItem)))
+                .andExpect(status().isOk())
+                .andReturn();
+        String uuid = JsonPath.read(mvcResult.getResponse().getContentAsString(), "$.uuid");
+
+        //then
+        expectIlikeListSize("zephyrus", "1");
+
+        this.mockMvc.perform(
+                        patch(apiUrl + "/{id}", uuid)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\": \"Borealis Lily\"}"))
+                .andExpect(status().isNoContent());
+        expectIlikeListSize("zephyrus", "0");
+        expectIlikeListSize("borealis", "1");
+
+        this.mockMvc.perform(
+                        delete(apiUrl + "/{id}", uuid))
+                .andExpect(status().isNoContent());
+        expectIlikeListSize("borealis", "0");
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenBuiltIndex_whenBulkRenamed_thenIlikeShouldFindRenamedRows() throws Exception {
+        //given
+        expectIlikeListSize("fescue", "0");
+
+        //when
+        this.mockMvc.perform(
+                        patch(apiUrl + "?ilike.name=grass")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"name\": \"Meadow Fescue\"}"))
+                .andExpect(status().isOk());
+
+        //then
+        expectIlikeListSize("fescue", "4");
+        expectIlikeListSize("grass", "0");
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_INVENTORY_ITEMS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IMPORT_INVENTORY_STATEMENT)
+    })
+    void givenBuiltPrefixIndex_whenSuggestByPrefix_thenShouldReturnSameMatchesAsDatabaseAndFollowWrites() throws Exception {
+        //given
+        awaitNameIndexes();
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "/suggest?prefix=CA&limit=3")
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(3)))
+                .andExpect(jsonPath("$.[0].uuid", is("00195d46-8f54-4536-a7af-7df9d332a5fb")))
+                .andExpect(jsonPath("$.[0].name", is("California Greenbrier")))
+                .andExpect(jsonPath("$.[1].name", is("Canada Lettuce")))
+                .andExpect(jsonPath("$.[2].name", is("Carolina Puccoon")));
+
+        InventoryItem inventoryItem = new InventoryItem();
+        inventoryItem.setName("Érable Rouge");
+        inventoryItem.setQuantity(5);
+        inventoryItem.setUnitPrice(5);
+        inventoryItem.setPackageVolume(5);
+        this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(inventoryItem)))
+                .andExpect(status().isOk());
+
+        assertThat(inventoryItemApi.areNameIndexesStale()).isFalse();
+        this.mockMvc.perform(
+                        get(apiUrl + "/suggest").param("prefix", "erable r")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(1)))
+                .andExpect(jsonPath("$.[0].name", is("Érable Rouge")));
+    }
+
+    //the indexes are rebuilt in the background, requests are answered by the database meanwhile
+    private void awaitNameIndexes() throws Exception {
+        this.mockMvc.perform(
+                        get(apiUrl + "/suggest?prefix=a")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (inventoryItemApi.areNameIndexesStale() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(inventoryItemApi.areNameIndexesStale()).isFalse();
+    }
+
+    private void expectIlikeListSize(String name, String listSize) throws Exception {
+        this.mockMvc.perform(
+                        get(apiUrl + "?ilike.name=" + name)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("listSize", listSize));
+    }
+}
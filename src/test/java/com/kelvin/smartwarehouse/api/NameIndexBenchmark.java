@@ -0,0 +1,100 @@
+package com.kelvin.smartwarehouse.api;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.kelvin.smartwarehouse.management.AppConstants.INVENTORY_ITEMS_URL;
+import static com.kelvin.smartwarehouse.managment.TestConstants.INVENTORY_ITEMS_SCHEMA_SCRIPT;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+// the latency of leading wildcard name searches over a catalog of a million items, narrowed down by the
+// trigram index and as a plain LIKE scan, the index needs a bigger heap than the default, run it alone,
+// e.g. mvn test -Dtest=NameIndexBenchmark -DargLine=-Xmx3g
+@Disabled("benchmark, run manually")
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = "api.name-index.enabled=true")
+@Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = INVENTORY_ITEMS_SCHEMA_SCRIPT)
+public class NameIndexBenchmark {
+
+    private static final int ROWS = 1_000_000;
+    private static final int BATCH = 10_000;
+    private static final int SEARCHES = 20;
+
+    private static final String[] WORDS = {
+            "Alpine", "Bitter", "Canada", "Desert", "Eastern", "Fringed", "Giant", "Hairy", "Island", "Jersey",
+            "Kidney", "Lesser", "Marsh", "Northern", "Ozark", "Prairie", "Queen", "Rock", "Swamp", "Tufted",
+            "Aster", "Bluet", "Clover", "Dock", "Fescue", "Gentian", "Grass", "Lettuce", "Lily", "Mallow",
+            "Nettle", "Orchid", "Phlox", "Rush", "Sedge", "Thistle", "Vetch", "Violet", "Willow", "Yarrow"
+    };
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private InventoryItemApi inventoryItemApi;
+
+    @Test
+    void compareIndexedAndScannedNameSearches() throws Exception {
+        long start = System.nanoTime();
+        for (int from = 0; from < ROWS; from += BATCH) {
+            List<Object[]> rows = new ArrayList<>(BATCH);
+            for (int i = from; i < from + BATCH; i++) {
+                rows.add(new Object[]{String.format("00000000-0000-0000-0000-%012d", i), toName(i), i % 1000, 10.0, 1.0});
+            }
+            jdbcTemplate.batchUpdate("insert into inventory_items(uuid, name, quantity, unit_price, package_volume) values (?, ?, ?, ?, ?)", rows);
+        }
+        System.out.printf("%d rows inserted in %d ms%n", ROWS, (System.nanoTime() - start) / 1_000_000);
+
+        start = System.nanoTime();
+        search("warm up");
+        while (inventoryItemApi.areNameIndexesStale()) {
+            Thread.sleep(100);
+        }
+        System.out.printf("name indexes built in the background in %d ms%n", (System.nanoTime() - start) / 1_000_000);
+
+        InventoryItemApi target = AopTestUtils.getTargetObject(inventoryItemApi);
+        // a code matches a single row, a pair of words some 600, both within the candidate limit
+        for (String name : new String[]{"0421337", "Ozark Lettuce"}) {
+            measure(name, "indexed");
+            target.nameIndexEnabled = false;
+            measure(name, "LIKE scan");
+            target.nameIndexEnabled = true;
+            measure(name, "indexed");
+        }
+    }
+
+    private static String toName(int i) {
+        return WORDS[i % 40] + " " + WORDS[(i / 40) % 40] + " " + String.format("%07d", i);
+    }
+
+    private void measure(String name, String mode) throws Exception {
+        // warm up
+        search(name);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < SEARCHES; i++) {
+            search(name);
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("like.name=%s, %s: %d searches in %d ms, %.1f ms per search%n", name, mode, SEARCHES, nanos / 1_000_000, nanos / 1e6 / SEARCHES);
+    }
+
+    private void search(String name) throws Exception {
+        mockMvc.perform(get(INVENTORY_ITEMS_URL).param("like.name", name));
+    }
+}
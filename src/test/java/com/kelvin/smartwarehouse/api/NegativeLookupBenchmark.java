@@ -0,0 +1,86 @@
+package com.kelvin.smartwarehouse.api;
+
+import com.jayway.jsonpath.JsonPath;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.kelvin.smartwarehouse.management.AppConstants.INVENTORY_ITEMS_URL;
+import static com.kelvin.smartwarehouse.management.AppConstants.TRUCK_URL;
+import static com.kelvin.smartwarehouse.managment.TestConstants.INVENTORY_ITEMS_SCHEMA_SCRIPT;
+import static com.kelvin.smartwarehouse.managment.TestConstants.TRUCKS_SCHEMA_SCRIPT;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+// the throughput of fetching trucks by id when half the ids don't exist, next to the misses of inventory
+// items, whose api has no filter and looks every id up, run it alone, e.g. mvn test -Dtest=NegativeLookupBenchmark
+@Disabled("benchmark, run manually")
+@SpringBootTest
+@AutoConfigureMockMvc
+@Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = {TRUCKS_SCHEMA_SCRIPT, INVENTORY_ITEMS_SCHEMA_SCRIPT})
+public class NegativeLookupBenchmark {
+
+    private static final int ROWS = 100_000;
+    private static final int LOOKUPS = 50_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void measureFetchThroughputAtHalfMisses() throws Exception {
+        List<Object[]> rows = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new Object[]{"CHASSIS-" + i, "PLATE-" + i, 60.0});
+        }
+        jdbcTemplate.batchUpdate("insert into truck(chassis_number, license_plate, container_volume) values (?, ?, ?)", rows);
+
+        long start = System.nanoTime();
+        mockMvc.perform(get(TRUCK_URL + "/{id}", "MISSING-0"));
+        while (!isFilterBuilt()) {
+            Thread.sleep(10);
+        }
+        System.out.printf("%d rows, filter built in the background in %d ms%n", ROWS, (System.nanoTime() - start) / 1_000_000);
+
+        // warm up
+        measure("warm up", LOOKUPS, i -> lookup(i % 2 == 0 ? "CHASSIS-" + (i % ROWS) : "MISSING-" + i));
+
+        measure("hits", LOOKUPS, i -> lookup("CHASSIS-" + (i % ROWS)));
+        measure("misses, short circuited", LOOKUPS, i -> lookup("MISSING-" + i));
+        measure("50% misses", LOOKUPS, i -> lookup(i % 2 == 0 ? "CHASSIS-" + (i % ROWS) : "MISSING-" + i));
+        measure("misses without filter", LOOKUPS, i -> mockMvc.perform(get(INVENTORY_ITEMS_URL + "/{id}", "MISSING-" + i)));
+    }
+
+    private void lookup(String id) throws Exception {
+        mockMvc.perform(get(TRUCK_URL + "/{id}", id));
+    }
+
+    private boolean isFilterBuilt() throws Exception {
+        String stats = mockMvc.perform(get(TRUCK_URL + "/_stats/negative-lookup")).andReturn().getResponse().getContentAsString();
+        return JsonPath.read(stats, "$.built");
+    }
+
+    private void measure(String name, int lookups, Lookup lookup) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            lookup.run(i);
+        }
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%s: %d lookups in %d ms, %.0f lookups/s%n", name, lookups, nanos / 1_000_000, lookups / (nanos / 1e9));
+    }
+
+    @FunctionalInterface
+    private interface Lookup {
+
+        void run(int i) throws Exception;
+    }
+}
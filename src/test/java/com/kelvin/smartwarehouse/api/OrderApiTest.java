@@ -1,9 +1,17 @@
 package com.kelvin.smartwarehouse.api;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
 import com.kelvin.smartwarehouse.exception.EntityWithIdNotFoundException;
 import com.kelvin.smartwarehouse.exception.InvalidParameterException;
+import com.kelvin.smartwarehouse.model.OrderItem;
 import com.kelvin.smartwarehouse.model.enums.OrderStatus;
+import com.kelvin.smartwarehouse.utils.XlsxUtils;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
@@ -11,18 +19,32 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.jdbc.SqlGroup;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.nio.file.Files;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
 import static com.kelvin.smartwarehouse.management.AppConstants.ORDERS_URL;
+import static com.kelvin.smartwarehouse.management.AppConstants.ORDER_ITEMS_URL;
 import static com.kelvin.smartwarehouse.managment.TestConstants.*;
 import static com.kelvin.smartwarehouse.utils.CsvUtils.extractCsvFileContentAsString;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -31,96 +53,928 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 
 @SpringBootTest
 @AutoConfigureMockMvc
+@TestPropertySource(properties = {
+        "api.order-holds.enabled=true",
+        "api.order-holds.ttl-millis=" + OrderApiTest.HOLD_TTL_MILLIS,
+        "api.order-holds.tick-millis=20",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "logging.level.org.hibernate.engine.internal.StatisticalLoggingSessionEventListener=WARN"
+})
 @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = ORDERS_SCHEMA_SCRIPT)
 public class OrderApiTest {
 
     private final ObjectMapper objectMapper;
     private final MockMvc mockMvc;
+    private final JdbcTemplate jdbcTemplate;
 
     static final String importRecordsScript = IMPORT_ORDERS_SCRIPT;
     static final String deleteStatement = DELETE_ORDERS_STATEMENT;
 
     static final String apiUrl = ORDERS_URL;
 
+    static final long HOLD_TTL_MILLIS = 2000;
+    static final long HOLD_AWAIT_MILLIS = 5000;
+    //seeded by import_inventory_items.sql
+    static final String HELD_ITEM_UUID = "c455da23-fe31-43a5-b7fe-5420d1df4fa0";
+    static final int HELD_ITEM_QUANTITY = 7413;
+
     @Autowired
-    public OrderApiTest(ObjectMapper mapper, MockMvc mockMvc) {
+    public OrderApiTest(ObjectMapper mapper, MockMvc mockMvc, JdbcTemplate jdbcTemplate) {
         this.objectMapper = mapper;
         this.mockMvc = mockMvc;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Test
+    @Order(1)
+    void contextLoads() {
+        assertThat(mockMvc).isNotNull();
+    }
+
+    //crud
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSql_whenGetAll_thenOkAndShouldReturnArray() throws Exception {
+        //given
+        //we have the data.sql script file loaded
+
+        //when
+        this.mockMvc.perform(
+                get(apiUrl)
+                        .contentType(MediaType.APPLICATION_JSON))
+        //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isArray())
+                .andExpect(jsonPath("$.length()", is(10)))
+                .andExpect(header().string("startRow", "0"))
+                .andExpect(header().string("pageSize", "10"))
+                .andExpect(header().string("listSize", "25"))
+                .andExpect(jsonPath("$.[0].uuid", is("b2e9f0ed-1364-45e6-9d3a-5cc5456e75f9")))
+                .andExpect(jsonPath("$.[0].submittedDate", is("2022-07-01")))
+                .andExpect(jsonPath("$.[0].deadlineDate", is("2022-07-10")))
+                .andExpect(jsonPath("$.[0].status", is("CREATED")));
+
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSql_whenGetAllWithCursor_thenOkAndShouldReturnEveryRecordOnceAcrossPages() throws Exception {
+        //given
+        //we have the data.sql script file loaded
+        Set<String> uuids = new HashSet<>();
+        String cursor = "";
+        int pages = 0;
+
+        //when
+        while (cursor != null) {
+            MvcResult result = this.mockMvc.perform(
+                            get(apiUrl + "?pageSize=10&cursor={cursor}", cursor)
+                                    .contentType(MediaType.APPLICATION_JSON))
+                    .andExpect(status().isOk())
+                    .andExpect(header().string("listSize", "25"))
+                    .andReturn();
+
+            List<String> pageUuids = JsonPath.read(result.getResponse().getContentAsString(), "$[*].uuid");
+            uuids.addAll(pageUuids);
+            cursor = result.getResponse().getHeader("nextCursor");
+            pages++;
+        }
+
+        //then
+        assertThat(uuids.size()).isEqualTo(25);
+        assertThat(pages).isEqualTo(3);
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenOrdersWithoutDeadline_whenGetAllWithCursorOrderedByDeadline_thenShouldReturnEveryRecordOnceWithNullsLast() throws Exception {
+        //given
+        //imported orders may miss their dates
+        jdbcTemplate.update("insert into orders(uuid, submitted_date, deadline_date, status) values ('0d5b8e1c-6a43-4b4e-9f0e-1a2b3c4d5e01', '2022-07-02', null, 'CREATED')");
+        jdbcTemplate.update("insert into orders(uuid, submitted_date, deadline_date, status) values ('0d5b8e1c-6a43-4b4e-9f0e-1a2b3c4d5e02', null, null, 'CREATED')");
+        jdbcTemplate.update("insert into orders(uuid, submitted_date, deadline_date, status) values ('0d5b8e1c-6a43-4b4e-9f0e-1a2b3c4d5e03', '2022-07-03', null, 'CREATED')");
+
+        for (String direction : new String[]{"asc", "desc"}) {
+            Set<String> uuids = new HashSet<>();
+            List<String> deadlines = new ArrayList<>();
+            String cursor = "";
+
+            //when
+            while (cursor != null) {
+                MvcResult result = this.mockMvc.perform(
+                                get(apiUrl + "?pageSize=4&orderBy=deadlineDate {direction}&cursor={cursor}", direction, cursor)
+                                        .contentType(MediaType.APPLICATION_JSON))
+                        .andExpect(status().isOk())
+                        .andExpect(header().string("listSize", "28"))
+                        .andReturn();
+
+                String content = result.getResponse().getContentAsString();
+                uuids.addAll(JsonPath.<List<String>>read(content, "$[*].uuid"));
+                deadlines.addAll(JsonPath.<List<String>>read(content, "$[*].deadlineDate"));
+                cursor = result.getResponse().getHeader("nextCursor");
+            }
+
+            //then
+            assertThat(uuids.size()).isEqualTo(28);
+            assertThat(deadlines.size()).isEqualTo(28);
+            List<String> datedDeadlines = deadlines.subList(0, 25);
+            List<String> sortedDeadlines = new ArrayList<>(datedDeadlines);
+            sortedDeadlines.sort(direction.equals("asc") ? Comparator.naturalOrder() : Comparator.reverseOrder());
+            assertThat(datedDeadlines).isEqualTo(sortedDeadlines);
+            assertThat(deadlines.subList(25, 28).stream().allMatch(Objects::isNull)).isTrue();
+        }
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSql_whenGetAllWithCountNone_thenOkAndShouldReturnHasMoreInsteadOfListSize() throws Exception {
+        //given
+        //we have the data.sql script file loaded
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "?startRow=20&count=none")
+                                .contentType(MediaType.APPLICATION_JSON))
+        //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(5)))
+                .andExpect(header().doesNotExist("listSize"))
+                .andExpect(header().string("listSizeMode", "none"))
+                .andExpect(header().string("hasMore", "false"));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "?startRow=10&count=none")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(10)))
+                .andExpect(header().string("hasMore", "true"));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenCachedCount_whenPost_thenShouldInvalidateCachedCount() throws Exception {
+        //given
+        this.mockMvc.perform(
+                        get(apiUrl + "?count=cached")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "25"))
+                .andExpect(header().string("listSizeMode", "cached"));
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(buildOrder())))
+                .andExpect(status().isOk());
+
+        //then
+        this.mockMvc.perform(
+                        get(apiUrl + "?count=cached")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "26"))
+                .andExpect(header().string("listSizeMode", "cached"));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSameFilterKeysWithDifferentValues_whenGetAll_thenShouldReuseQueryShape() throws Exception {
+        //given
+        this.mockMvc.perform(
+                        get(apiUrl + "?obj.status=CANCELED&orderBy=submittedDate asc")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "?obj.status=CREATED&orderBy=submittedDate asc")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+
+        //then
+        this.mockMvc.perform(
+                        get(apiUrl + "/_stats/queries")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.queryShapes.entity", is("Order")))
+                .andExpect(jsonPath("$.queryShapes.shapes", hasItem("count|obj.status|")))
+                .andExpect(jsonPath("$.queryShapes.shapes", hasItem("search|obj.status|submittedDate asc")))
+                .andExpect(jsonPath("$.queryShapes.repeats", greaterThan(0)))
+                .andExpect(jsonPath("$.planCache.hits", greaterThan(0)));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSql_whenStream_thenOkAndShouldReturnEveryRecordAsNdjsonLine() throws Exception {
+        //given
+        //we have the data.sql script file loaded
+
+        //when
+        MvcResult result = this.mockMvc.perform(
+                        get(apiUrl + "/stream?obj.status=CANCELED&fields=uuid,status"))
+        //then
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON))
+                .andReturn();
+
+        String[] lines = result.getResponse().getContentAsString().split("\n");
+        assertThat(lines.length).isEqualTo(23);
+        for (String line : lines) {
+            assertThat(line).matches("\\{\"uuid\":\"[0-9a-f-]{36}\",\"status\":\"CANCELED\"}");
+        }
+
+        this.mockMvc.perform(
+                        get(apiUrl)
+                                .accept(MediaType.APPLICATION_NDJSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON));
+    }
+
+    @Test
+    @Order(2)
+    void givenInvalidCursor_whenGetAll_thenShouldReturn4xxClientError() throws Exception {
+        //given
+        String cursor = "notACursor";
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "?cursor={cursor}", cursor)
+                                .contentType(MediaType.APPLICATION_JSON))
+        //then
+                .andExpect(status().is4xxClientError())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InvalidParameterException));
+    }
+
+    @Test
+    @Order(2)
+    void givenEmptyTable_whenGetAll_thenOkAndShouldReturnEmptyArray() throws Exception {
+        //given
+        //we have the table empty
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON))
+        //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isArray())
+                .andExpect(jsonPath("$.length()", is(0)));
+
+    }
+
+
+    @Test
+    @Order(2)
+    void givenOrder_whenPost_thenShouldPersistOrder() throws Exception {
+        //given
+        com.kelvin.smartwarehouse.model.Order order = buildOrder();
+
+        String jsonBody = objectMapper.writeValueAsString(order);
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(jsonBody))
+        //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.uuid", is(notNullValue())))
+                .andExpect(jsonPath("$.submittedDate", is(order.getSubmittedDate().toString())))
+                .andExpect(jsonPath("$.deadlineDate", is(order.getDeadlineDate().toString())))
+                .andExpect(jsonPath("$.status", is(order.getStatus().toString())));
+
+    }
+
+    @Test
+    @Order(2)
+    @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    void givenJsonArrayWithInvalidOrder_whenPostBulk_thenShouldPersistValidOrdersAndRejectInvalidOne() throws Exception {
+        //given
+        com.kelvin.smartwarehouse.model.Order invalidOrder = buildOrder();
+        invalidOrder.setDeadlineDate(null);
+
+        String jsonBody = objectMapper.writeValueAsString(List.of(buildOrder(), invalidOrder, buildOrder()));
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl + "/_bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(jsonBody))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(header().string("created", "2"))
+                .andExpect(header().string("rejected", "1"))
+                .andExpect(jsonPath("$.length()", is(3)))
+                .andExpect(jsonPath("$.[0].created", is(true)))
+                .andExpect(jsonPath("$.[0].id", is(notNullValue())))
+                .andExpect(jsonPath("$.[1].created", is(false)))
+                .andExpect(jsonPath("$.[1].error", is("Order deadline date is required!")))
+                .andExpect(jsonPath("$.[2].index", is(2)))
+                .andExpect(jsonPath("$.[2].created", is(true)));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "?obj.status=CREATED")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "2"));
+    }
+
+    @Test
+    @Order(2)
+    @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    void givenNdjsonWithMalformedLine_whenPostBulk_thenShouldPersistValidLinesAndRejectMalformedOne() throws Exception {
+        //given
+        String ndjsonBody = objectMapper.writeValueAsString(buildOrder()) + "\n"
+                + "{not json\n"
+                + objectMapper.writeValueAsString(buildOrder()) + "\n";
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl + "/_bulk")
+                                .contentType(MediaType.APPLICATION_NDJSON)
+                                .content(ndjsonBody))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(header().string("created", "2"))
+                .andExpect(header().string("rejected", "1"))
+                .andExpect(jsonPath("$.[1].created", is(false)))
+                .andExpect(jsonPath("$.[1].error", is(notNullValue())));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSql_whenPatchByFilters_thenShouldUpdateOnlyMatchingOrders() throws Exception {
+        //given
+        String requestBody = "{\"status\" : \"CANCELED\"}";
+
+        //when
+        this.mockMvc.perform(
+                        patch(apiUrl + "?obj.status=CREATED&to.deadlineDate=2022-07-11&dryRun=true")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(requestBody))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.affected", is(1)))
+                .andExpect(jsonPath("$.dryRun", is(true)));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "?obj.status=CANCELED&count=cached")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "23"));
+
+        this.mockMvc.perform(
+                        patch(apiUrl + "?obj.status=CREATED&to.deadlineDate=2022-07-11")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(requestBody))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.affected", is(1)))
+                .andExpect(jsonPath("$.dryRun", is(false)));
+
+        //then
+        this.mockMvc.perform(
+                        get(apiUrl + "?obj.status=CANCELED&count=cached")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "24"));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_ORDERS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_ORDERS_STATEMENT)
+    })
+    void givenSeedOrderPastItsDeadline_whenMergePatch_thenShouldOnlyValidatePatchedDeadline() throws Exception {
+        //given
+        String id = "b2e9f0ed-1364-45e6-9d3a-5cc5456e75f9";
+
+        //when
+        this.mockMvc.perform(
+                        patch(apiUrl + "/{id}", id)
+                                .contentType("application/merge-patch+json")
+                                .content("{\"status\" : \"CANCELED\"}"))
+                //then
+                .andExpect(status().isNoContent());
+
+        this.mockMvc.perform(
+                        patch(apiUrl + "/{id}", id)
+                                .contentType("application/merge-patch+json")
+                                .content("{\"deadlineDate\" : \"2022-07-20\"}"))
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertThat(result.getResolvedException().getMessage())
+                        .isEqualTo("Order deadline date should be in the future!"));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.status", is(OrderStatus.CANCELED.name())))
+                .andExpect(jsonPath("$.deadlineDate", is("2022-07-10")));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSql_whenDeleteByFilters_thenShouldDeleteOnlyMatchingOrders() throws Exception {
+        //when
+        this.mockMvc.perform(
+                        delete(apiUrl + "?obj.status=CANCELED&to.submittedDate=2022-07-02")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.affected", is(23)));
+
+        //then
+        this.mockMvc.perform(
+                        get(apiUrl + "/_aggregate?groupBy=status&to.submittedDate=2022-07-02")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()", is(2)))
+                .andExpect(jsonPath("$.[0].status", is(OrderStatus.CREATED.name())));
+
+        this.mockMvc.perform(
+                        delete(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InvalidParameterException));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_ORDER_ITEMS_STATEMENT)
+    })
+    void givenOrderWithItems_whenPost_thenShouldPersistOrderAndItsItems() throws Exception {
+        //given
+        com.kelvin.smartwarehouse.model.Order order = buildOrder();
+        order.setItems(List.of(buildOrderItem("item-1", 3), buildOrderItem("item-2", 5)));
+
+        String jsonBody = objectMapper.writeValueAsString(order);
+
+        //when
+        MvcResult mvcResult = this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(jsonBody))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.uuid", is(notNullValue())))
+                .andExpect(jsonPath("$.items.length()", is(2)))
+                .andExpect(jsonPath("$.items[0].uuid", is(notNullValue())))
+                .andReturn();
+
+        String orderUuid = JsonPath.read(mvcResult.getResponse().getContentAsString(), "$.uuid");
+
+        this.mockMvc.perform(
+                        get(ORDER_ITEMS_URL + "?obj.orderUuid=" + orderUuid)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string("listSize", "2"));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_ORDER_ITEMS_STATEMENT)
+    })
+    void givenOrderWithInvalidItem_whenPost_thenBadRequestAndNothingShouldBePersisted() throws Exception {
+        //given
+        com.kelvin.smartwarehouse.model.Order order = buildOrder();
+        order.setItems(List.of(buildOrderItem("item-1", 3), buildOrderItem("item-2", 0)));
+
+        String jsonBody = objectMapper.writeValueAsString(order);
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(jsonBody))
+                //then
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InvalidParameterException))
+                .andExpect(result -> assertThat(result.getResolvedException().getMessage())
+                        .isEqualTo("Order item 1: Order item quantity should be a positive number!"));
+
+        this.mockMvc.perform(
+                        get(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "0"));
+        this.mockMvc.perform(
+                        get(ORDER_ITEMS_URL)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "0"));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_ORDER_ITEMS_STATEMENT)
+    })
+    void givenOrderWithUnknownItem_whenPostWithCheckItems_thenBadRequest() throws Exception {
+        //given
+        com.kelvin.smartwarehouse.model.Order order = buildOrder();
+        order.setItems(List.of(buildOrderItem("unknown-item", 3)));
+
+        String jsonBody = objectMapper.writeValueAsString(order);
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl + "?checkItems=true")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(jsonBody))
+                //then
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertThat(result.getResolvedException().getMessage())
+                        .isEqualTo("Inventory items with ids [unknown-item] don't exist!"));
+    }
+
+    //order holds
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = {INVENTORY_ITEMS_SCHEMA_SCRIPT, IMPORT_INVENTORY_ITEMS_SCRIPT}),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = {
+                    deleteStatement, DELETE_ORDER_ITEMS_STATEMENT, DELETE_INVENTORY_HOLDS_STATEMENT, DELETE_IMPORT_INVENTORY_STATEMENT})
+    })
+    void givenOrderAwaitingApproval_whenApproved_thenShouldKeepStockTakenAndEndHold() throws Exception {
+        //given
+        String orderUuid = postOrderAwaitingApproval(30);
+        awaitQuantity(HELD_ITEM_UUID, HELD_ITEM_QUANTITY - 30);
+        assertThat(countHolds(orderUuid, false)).isEqualTo(1);
+
+        //when
+        this.mockMvc.perform(
+                        patch(apiUrl + "/{id}", orderUuid)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"status\": \"APPROVED\"}"))
+                .andExpect(status().isNoContent());
+
+        //then
+        awaitHolds(orderUuid, 0);
+        assertThat(getQuantity(HELD_ITEM_UUID)).isEqualTo(HELD_ITEM_QUANTITY - 30);
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = {INVENTORY_ITEMS_SCHEMA_SCRIPT, IMPORT_INVENTORY_ITEMS_SCRIPT}),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = {
+                    deleteStatement, DELETE_ORDER_ITEMS_STATEMENT, DELETE_INVENTORY_HOLDS_STATEMENT, DELETE_IMPORT_INVENTORY_STATEMENT})
+    })
+    void givenOrderAwaitingApproval_whenHoldExpires_thenShouldGiveStockBackAndKeepReleasedHold() throws Exception {
+        //given
+        String orderUuid = postOrderAwaitingApproval(30);
+        awaitQuantity(HELD_ITEM_UUID, HELD_ITEM_QUANTITY - 30);
+
+        //when
+        //the order keeps awaiting approval past the ttl
+
+        //then
+        awaitQuantity(HELD_ITEM_UUID, HELD_ITEM_QUANTITY);
+        assertThat(countHolds(orderUuid, false)).isEqualTo(0);
+        //the released hold stays, so the order isn't held again while it awaits approval
+        assertThat(countHolds(orderUuid, true)).isEqualTo(1);
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = {INVENTORY_ITEMS_SCHEMA_SCRIPT, IMPORT_INVENTORY_ITEMS_SCRIPT}),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = {
+                    deleteStatement, DELETE_ORDER_ITEMS_STATEMENT, DELETE_INVENTORY_HOLDS_STATEMENT, DELETE_IMPORT_INVENTORY_STATEMENT})
+    })
+    void givenOrderAwaitingApproval_whenDeleted_thenShouldGiveStockBackAndRemoveHold() throws Exception {
+        //given
+        String orderUuid = postOrderAwaitingApproval(30);
+        awaitQuantity(HELD_ITEM_UUID, HELD_ITEM_QUANTITY - 30);
+
+        //when
+        this.mockMvc.perform(
+                        delete(apiUrl + "/{id}", orderUuid))
+                .andExpect(status().isNoContent());
+
+        //then
+        awaitHolds(orderUuid, 0);
+        assertThat(getQuantity(HELD_ITEM_UUID)).isEqualTo(HELD_ITEM_QUANTITY);
     }
 
     @Test
-    @Order(1)
-    void contextLoads() {
-        assertThat(mockMvc).isNotNull();
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = {INVENTORY_ITEMS_SCHEMA_SCRIPT, IMPORT_INVENTORY_ITEMS_SCRIPT}),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = {
+                    deleteStatement, DELETE_ORDER_ITEMS_STATEMENT, DELETE_INVENTORY_HOLDS_STATEMENT, DELETE_IMPORT_INVENTORY_STATEMENT})
+    })
+    void givenOrderAwaitingApprovalOfMoreThanInStock_whenPost_thenShouldHoldNothing() throws Exception {
+        //given
+        String orderUuid = postOrderAwaitingApproval(HELD_ITEM_QUANTITY + 1);
+
+        //when
+        //the hold is attempted in the background
+        Thread.sleep(200);
+
+        //then
+        assertThat(countHolds(orderUuid, false)).isEqualTo(0);
+        assertThat(getQuantity(HELD_ITEM_UUID)).isEqualTo(HELD_ITEM_QUANTITY);
     }
 
-    //crud
     @Test
     @Order(2)
     @SqlGroup({
-            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
-            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = {INVENTORY_ITEMS_SCHEMA_SCRIPT, IMPORT_INVENTORY_ITEMS_SCRIPT}),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = {
+                    deleteStatement, DELETE_ORDER_ITEMS_STATEMENT, DELETE_INVENTORY_HOLDS_STATEMENT, DELETE_IMPORT_INVENTORY_STATEMENT})
     })
-    void givenSeedDataFromImportSql_whenGetAll_thenOkAndShouldReturnArray() throws Exception {
+    void givenOrderAwaitingApprovalWithoutItems_whenItemsArePostedAndDeleted_thenShouldHoldTheStockOfCurrentItems() throws Exception {
         //given
-        //we have the data.sql script file loaded
+        com.kelvin.smartwarehouse.model.Order order = buildOrder();
+        order.setStatus(OrderStatus.AWAITING_APPROVAL);
+        MvcResult mvcResult = this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(order)))
+                .andExpect(status().isOk())
+                .andReturn();
+        String orderUuid = JsonPath.read(mvcResult.getResponse().getContentAsString(), "$.uuid");
+        Thread.sleep(100);
+        assertThat(countHolds(orderUuid, false)).isEqualTo(0);
 
         //when
-        this.mockMvc.perform(
-                get(apiUrl)
-                        .contentType(MediaType.APPLICATION_JSON))
+        String firstItemUuid = postOrderItem(orderUuid, 30);
+
         //then
+        awaitQuantity(HELD_ITEM_UUID, HELD_ITEM_QUANTITY - 30);
+        assertThat(countHolds(orderUuid, false)).isEqualTo(1);
+
+        //an item added to an order already held is held as well
+        postOrderItem(orderUuid, 20);
+        awaitQuantity(HELD_ITEM_UUID, HELD_ITEM_QUANTITY - 50);
+        assertThat(countHolds(orderUuid, false)).isEqualTo(2);
+
+        this.mockMvc.perform(
+                        delete(ORDER_ITEMS_URL + "/{id}", firstItemUuid))
+                .andExpect(status().isNoContent());
+        awaitQuantity(HELD_ITEM_UUID, HELD_ITEM_QUANTITY - 20);
+        assertThat(countHolds(orderUuid, false)).isEqualTo(1);
+    }
+
+    private String postOrderItem(String orderUuid, int quantity) throws Exception {
+        OrderItem orderItem = buildOrderItem(HELD_ITEM_UUID, quantity);
+        orderItem.setOrderUuid(orderUuid);
+
+        MvcResult mvcResult = this.mockMvc.perform(
+                        post(ORDER_ITEMS_URL)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(orderItem)))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$").isArray())
-                .andExpect(jsonPath("$.length()", is(10)))
-                .andExpect(header().string("startRow", "0"))
-                .andExpect(header().string("pageSize", "10"))
-                .andExpect(header().string("listSize", "25"))
-                .andExpect(jsonPath("$.[0].uuid", is("b2e9f0ed-1364-45e6-9d3a-5cc5456e75f9")))
-                .andExpect(jsonPath("$.[0].submittedDate", is("2022-07-01")))
-                .andExpect(jsonPath("$.[0].deadlineDate", is("2022-07-10")))
-                .andExpect(jsonPath("$.[0].status", is("CREATED")));
+                .andReturn();
+        return JsonPath.read(mvcResult.getResponse().getContentAsString(), "$.uuid");
+    }
+
+    private String postOrderAwaitingApproval(int quantity) throws Exception {
+        com.kelvin.smartwarehouse.model.Order order = buildOrder();
+        order.setStatus(OrderStatus.AWAITING_APPROVAL);
+        order.setItems(List.of(buildOrderItem(HELD_ITEM_UUID, quantity)));
+
+        MvcResult mvcResult = this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(order)))
+                .andExpect(status().isOk())
+                .andReturn();
+        return JsonPath.read(mvcResult.getResponse().getContentAsString(), "$.uuid");
+    }
+
+    //read from the table, the item cache of the api outlives the scripts resetting it
+    private int getQuantity(String itemUuid) {
+        return jdbcTemplate.queryForObject("select quantity from inventory_items where uuid = ?", Integer.class, itemUuid);
+    }
+
+    private int countHolds(String orderUuid, boolean released) {
+        return jdbcTemplate.queryForObject("select count(*) from inventory_holds where order_uuid = ? and released = ?",
+                Integer.class, orderUuid, released);
+    }
 
+    //holds are taken and given back by a background thread, after the request commits
+    private void awaitQuantity(String itemUuid, int expected) throws Exception {
+        long deadline = System.currentTimeMillis() + HOLD_AWAIT_MILLIS;
+        int quantity = getQuantity(itemUuid);
+        while (quantity != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            quantity = getQuantity(itemUuid);
+        }
+        assertThat(quantity).isEqualTo(expected);
+    }
+
+    private void awaitHolds(String orderUuid, int expected) throws Exception {
+        long deadline = System.currentTimeMillis() + HOLD_AWAIT_MILLIS;
+        int holds = countHolds(orderUuid, false) + countHolds(orderUuid, true);
+        while (holds != expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            holds = countHolds(orderUuid, false) + countHolds(orderUuid, true);
+        }
+        assertThat(holds).isEqualTo(expected);
     }
 
     @Test
     @Order(2)
-    void givenEmptyTable_whenGetAll_thenOkAndShouldReturnEmptyArray() throws Exception {
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IDEMPOTENCY_KEYS_STATEMENT)
+    })
+    void givenIdempotencyKey_whenPostTwice_thenShouldPersistOnceAndReplayResponse() throws Exception {
         //given
-        //we have the table empty
+        String jsonBody = objectMapper.writeValueAsString(buildOrder());
+
+        MvcResult mvcResult = this.mockMvc.perform(
+                        post(apiUrl)
+                                .header("Idempotency-Key", "scanner-1-request-1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(jsonBody))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Idempotent-Replayed"))
+                .andReturn();
+
+        String orderUuid = JsonPath.read(mvcResult.getResponse().getContentAsString(), "$.uuid");
 
         //when
+        this.mockMvc.perform(
+                        post(apiUrl)
+                                .header("Idempotency-Key", "scanner-1-request-1")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(jsonBody))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(header().string("Idempotent-Replayed", "true"))
+                .andExpect(jsonPath("$.uuid", is(orderUuid)));
+
         this.mockMvc.perform(
                         get(apiUrl)
                                 .contentType(MediaType.APPLICATION_JSON))
-        //then
+                .andExpect(header().string("listSize", "1"));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_IDEMPOTENCY_KEYS_STATEMENT)
+    })
+    void givenIdempotencyKeyUsedByAnotherRequest_whenPost_thenUnprocessableEntity() throws Exception {
+        //given
+        this.mockMvc.perform(
+                        post(apiUrl)
+                                .header("Idempotency-Key", "scanner-1-request-2")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(buildOrder())))
+                .andExpect(status().isOk());
+
+        com.kelvin.smartwarehouse.model.Order otherOrder = buildOrder();
+        otherOrder.setDeadlineDate(LocalDate.now().plusDays(5));
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl)
+                                .header("Idempotency-Key", "scanner-1-request-2")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(otherOrder)))
+                //then
+                .andExpect(status().isUnprocessableEntity());
+
+        this.mockMvc.perform(
+                        get(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "1"));
+    }
+
+    @Test
+    @Order(2)
+    @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    void givenCsvWithInvalidLines_whenImport_thenShouldPersistValidLinesAndReportInvalidOnes() throws Exception {
+        //given
+        LocalDate deadlineDate = LocalDate.now().plusDays(2);
+        String csv = "uuid,submittedDate,deadlineDate,status\n"
+                + "," + LocalDate.now() + "," + deadlineDate + ",CREATED\n"
+                + ",2022-06-15,2022-06-30,FULFILLED\n"
+                + ",," + deadlineDate + ",UNKNOWN\n"
+                + ",,30-06-2030,CREATED\n"
+                + "\n"
+                + ",," + deadlineDate + ",AWAITING_APPROVAL\n";
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl + "/import?type=csv")
+                                .contentType("text/csv")
+                                .content(csv))
+                //then
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$").isArray())
-                .andExpect(jsonPath("$.length()", is(0)));
+                .andExpect(jsonPath("$.imported", is(2)))
+                .andExpect(jsonPath("$.rejected", is(3)))
+                .andExpect(jsonPath("$.rejectedLines[0].line", is(3)))
+                .andExpect(jsonPath("$.rejectedLines[0].error", is("Order deadline date should be in the future!")))
+                .andExpect(jsonPath("$.rejectedLines[1].line", is(4)))
+                .andExpect(jsonPath("$.rejectedLines[1].error", is("Order status [UNKNOWN] is not valid!")))
+                .andExpect(jsonPath("$.rejectedLines[2].line", is(5)));
 
+        this.mockMvc.perform(
+                        get(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "2"));
     }
 
+    @Test
+    @Order(2)
+    void givenCsvWithoutRequiredColumns_whenImport_thenBadRequest() throws Exception {
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl + "/import?type=csv")
+                                .contentType("text/csv")
+                                .content("uuid,status\n,CREATED\n"))
+                //then
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertThat(result.getResolvedException().getMessage())
+                        .isEqualTo("Imported file is missing the columns [deadlineDate, submittedDate]!"));
+    }
 
     @Test
     @Order(2)
-    void givenOrder_whenPost_thenShouldPersistOrder() throws Exception {
+    @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    void givenXlsxWithDateCells_whenImport_thenShouldPersistOrders() throws Exception {
         //given
-        com.kelvin.smartwarehouse.model.Order order = buildOrder();
-
-        String jsonBody = objectMapper.writeValueAsString(order);
+        LocalDate deadlineDate = LocalDate.now().plusDays(2);
+        byte[] content;
+        try (Workbook workbook = new XSSFWorkbook(); ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("dd/mm/yyyy"));
+
+            Sheet sheet = workbook.createSheet("Orders");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("submittedDate");
+            header.createCell(1).setCellValue("deadlineDate");
+            header.createCell(2).setCellValue("status");
+            Row row = sheet.createRow(1);
+            row.createCell(0).setCellValue(LocalDate.of(2022, 7, 1));
+            row.getCell(0).setCellStyle(dateStyle);
+            row.createCell(1).setCellValue(deadlineDate);
+            row.getCell(1).setCellStyle(dateStyle);
+            row.createCell(2).setCellValue(OrderStatus.CREATED.name());
+            workbook.write(out);
+            content = out.toByteArray();
+        }
 
         //when
         this.mockMvc.perform(
-                        post(apiUrl)
-                        .contentType(MediaType.APPLICATION_JSON)
-                        .content(jsonBody))
-        //then
+                        post(apiUrl + "/import?type=xlsx")
+                                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                                .content(content))
+                //then
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.uuid", is(notNullValue())))
-                .andExpect(jsonPath("$.submittedDate", is(order.getSubmittedDate().toString())))
-                .andExpect(jsonPath("$.deadlineDate", is(order.getDeadlineDate().toString())))
-                .andExpect(jsonPath("$.status", is(order.getStatus().toString())));
+                .andExpect(jsonPath("$.imported", is(1)))
+                .andExpect(jsonPath("$.rejected", is(0)));
+
+        this.mockMvc.perform(
+                        get(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.[0].submittedDate", is("2022-07-01")))
+                .andExpect(jsonPath("$.[0].deadlineDate", is(deadlineDate.toString())));
+    }
 
+    private OrderItem buildOrderItem(String itemUuid, int quantity) {
+        OrderItem orderItem = new OrderItem();
+        orderItem.setItemUuid(itemUuid);
+        orderItem.setQuantity(quantity);
+        return orderItem;
     }
 
     private com.kelvin.smartwarehouse.model.Order buildOrder() {
@@ -199,6 +1053,75 @@ public class OrderApiTest {
                 .andExpect(jsonPath("$.status", is("FULFILLED")));
     }
 
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSqlAndIdAndFields_whenGetById_thenOkAndShouldReturnOnlyGivenFields() throws Exception {
+
+        //given
+        String id = "9fe2e517-c135-4f3e-a1c2-705e5b59a4f7";
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}?fields=uuid,status", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.uuid", is("9fe2e517-c135-4f3e-a1c2-705e5b59a4f7")))
+                .andExpect(jsonPath("$.status", is("FULFILLED")))
+                .andExpect(jsonPath("$.submittedDate").doesNotExist())
+                .andExpect(jsonPath("$.deadlineDate").doesNotExist());
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSqlAndFields_whenGetAll_thenOkAndShouldReturnArrayWithOnlyGivenFields() throws Exception {
+        //given
+        //we have the data.sql script file loaded
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "?fields=uuid,status,deadlineDate")
+                                .contentType(MediaType.APPLICATION_JSON))
+        //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(10)))
+                .andExpect(header().string("listSize", "25"))
+                .andExpect(jsonPath("$.[0].uuid", is("b2e9f0ed-1364-45e6-9d3a-5cc5456e75f9")))
+                .andExpect(jsonPath("$.[0].deadlineDate", is("2022-07-10")))
+                .andExpect(jsonPath("$.[0].status", is("CREATED")))
+                .andExpect(jsonPath("$.[0].submittedDate").doesNotExist());
+
+        this.mockMvc.perform(
+                        get(apiUrl + "?fields=status&cursor=")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("nextCursor"))
+                .andExpect(jsonPath("$.[0].status", is("CREATED")))
+                .andExpect(jsonPath("$.[0].uuid").doesNotExist())
+                .andExpect(jsonPath("$.[0].deadlineDate").doesNotExist());
+    }
+
+    @Test
+    @Order(2)
+    void givenUnknownField_whenGetAll_thenShouldReturn4xxClientError() throws Exception {
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "?fields=uuid,notAField")
+                                .contentType(MediaType.APPLICATION_JSON))
+        //then
+                .andExpect(status().is4xxClientError())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InvalidParameterException))
+                .andExpect(jsonPath("$.message", is("notAField is not a field of Order!")));
+    }
+
     @Test
     @Order(2)
     void givenEmptyListAndId_whenGetById_thenShouldReturn4xxClientError() throws Exception {
@@ -248,6 +1171,46 @@ public class OrderApiTest {
 
     }
 
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSqlAndId_whenUpdate_thenFetchShouldReturnUpdatedColumns() throws Exception {
+
+        //given
+        String id = "9fe2e517-c135-4f3e-a1c2-705e5b59a4f7";
+        String requestBody = "{\n" +
+                "    \"uuid\" : \"9fe2e517-c135-4f3e-a1c2-705e5b59a4f7\",\n" +
+                "    \"submittedDate\" : null,\n" +
+                "    \"deadlineDate\" : \"2022-07-15\",\n" +
+                "    \"status\" : \"UNDER_DELIVERY\"\n" +
+                "}";
+
+        //when
+        this.mockMvc.perform(
+                        put(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(requestBody))
+                .andExpect(status().isOk());
+
+        //then
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.submittedDate").doesNotExist())
+                .andExpect(jsonPath("$.deadlineDate", is("2022-07-15")))
+                .andExpect(jsonPath("$.status", is(OrderStatus.UNDER_DELIVERY.name())));
+
+        this.mockMvc.perform(
+                        get(apiUrl + "?obj.status=UNDER_DELIVERY")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(header().string("listSize", "1"));
+
+    }
+
     @Test
     @Order(2)
     void givenEmptyListAndIdAndOrder_whenUpdate_thenOkStatusAndShouldCreateNewOrder() throws Exception {
@@ -340,9 +1303,13 @@ public class OrderApiTest {
         String content = extractCsvFileContentAsString(file);
 
         //when
-        this.mockMvc.perform(
+        MvcResult mvcResult = this.mockMvc.perform(
                         get(apiUrl + "/export")
                                 .contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        this.mockMvc.perform(asyncDispatch(mvcResult))
                 //then
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM_VALUE))
@@ -375,6 +1342,44 @@ public class OrderApiTest {
                 .andExpect(content().bytes(content));
     }
 
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSql_whenExportOrdersToXlsx_thenOkAndShouldReturnTheRecordsOfTheCsvExportWithDateCells() throws Exception {
+
+        //given
+        String content = extractCsvFileContentAsString(new File(ORDERS_CSV_PATH));
+
+        //when
+        MvcResult mvcResult = this.mockMvc.perform(
+                        get(apiUrl + "/export?type=xlsx")
+                                .contentType(MediaType.APPLICATION_OCTET_STREAM))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        byte[] xlsx = this.mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_OCTET_STREAM_VALUE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        //then
+        File file = Files.createTempFile("orders", ".xlsx").toFile();
+        try {
+            Files.write(file.toPath(), xlsx);
+            StringBuilder exported = new StringBuilder();
+            XlsxUtils.readRows(file, row -> {
+                exported.append(String.join(",", row));
+                exported.append(System.lineSeparator());
+            });
+            assertThat(exported.toString()).isEqualTo(content);
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
     @Test
     @Order(2)
     @SqlGroup({
@@ -495,7 +1500,7 @@ public class OrderApiTest {
                 .andExpect(header().string("startRow", "0"))
                 .andExpect(header().string("pageSize", "10"))
                 .andExpect(header().string("listSize", "23"))
-                .andExpect(jsonPath("$.[0].uuid", is("6485c3ea-ed19-49da-bbbf-b5eb6eae4180")))
+                .andExpect(jsonPath("$.[0].uuid", is("03eff1c6-0d16-4fe9-bc03-74c1da68aa7b")))
                 .andExpect(jsonPath("$.[0].submittedDate", is("2022-05-01")))
                 .andExpect(jsonPath("$.[0].deadlineDate", is("2022-05-15")))
                 .andExpect(jsonPath("$.[0].status", is(OrderStatus.CANCELED.name())));
@@ -582,4 +1587,31 @@ public class OrderApiTest {
 
     }
 
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_ORDERS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_ORDERS_STATEMENT)
+    })
+    void givenSeedDataFromImportSql_whenAggregateCountGroupedByStatus_thenOkAndShouldReturnCountPerStatus() throws Exception {
+        //given
+        //we have the import-entity.sql script file loaded
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "/_aggregate?groupBy=status&count&to.submittedDate=2022-07-02")
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").isArray())
+                .andExpect(jsonPath("$.length()", is(3)))
+                .andExpect(jsonPath("$.[0].status", is(OrderStatus.CANCELED.name())))
+                .andExpect(jsonPath("$.[0].count", is(23)))
+                .andExpect(jsonPath("$.[1].status", is(OrderStatus.CREATED.name())))
+                .andExpect(jsonPath("$.[1].count", is(1)))
+                .andExpect(jsonPath("$.[2].status", is(OrderStatus.FULFILLED.name())))
+                .andExpect(jsonPath("$.[2].count", is(1)));
+
+    }
+
 }
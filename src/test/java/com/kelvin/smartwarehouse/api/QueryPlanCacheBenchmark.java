@@ -0,0 +1,73 @@
+package com.kelvin.smartwarehouse.api;
+
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static com.kelvin.smartwarehouse.management.AppConstants.INVENTORY_ITEMS_URL;
+import static com.kelvin.smartwarehouse.managment.TestConstants.IMPORT_INVENTORY_ITEMS_SCRIPT;
+import static com.kelvin.smartwarehouse.managment.TestConstants.INVENTORY_ITEMS_SCHEMA_SCRIPT;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+// the cpu time of a filtered list request whose shape repeats with new values, with the plan of the
+// shape cached as bound literals allow, and with the plan cache emptied before every request as
+// inlined literals would, run it alone, e.g. mvn test -Dtest=QueryPlanCacheBenchmark
+@Disabled("benchmark, run manually")
+@SpringBootTest
+@AutoConfigureMockMvc
+@Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = {INVENTORY_ITEMS_SCHEMA_SCRIPT, IMPORT_INVENTORY_ITEMS_SCRIPT})
+public class QueryPlanCacheBenchmark {
+
+    private static final int REQUESTS = 10_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void compareCachedAndReplannedQueryShapes() throws Exception {
+        SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+
+        // warm up
+        measure("warm up", i -> {});
+
+        measure("cached plan", i -> {});
+        measure("plan per request", i -> sessionFactory.getQueryPlanCache().cleanup());
+        measure("cached plan", i -> {});
+    }
+
+    private void measure(String name, BeforeRequest beforeRequest) throws Exception {
+        // MockMvc serves the request on this thread, so its cpu time is the request's
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long cpuNanos = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            beforeRequest.run(i);
+            long cpuStart = threads.getCurrentThreadCpuTime();
+            mockMvc.perform(get(INVENTORY_ITEMS_URL)
+                    .param("gt.quantity", String.valueOf(i % 5000))
+                    .param("lt.unitPrice", String.valueOf(1000 + i % 9000))
+                    .param("pageSize", "20"));
+            cpuNanos += threads.getCurrentThreadCpuTime() - cpuStart;
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        System.out.printf("%s: %d requests in %d ms, %d us cpu per request%n", name, REQUESTS, millis, cpuNanos / REQUESTS / 1000);
+    }
+
+    @FunctionalInterface
+    private interface BeforeRequest {
+
+        void run(int i) throws Exception;
+    }
+}
@@ -0,0 +1,210 @@
+package com.kelvin.smartwarehouse.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import com.kelvin.smartwarehouse.exception.EntityWithIdNotFoundException;
+import com.kelvin.smartwarehouse.exception.InvalidParameterException;
+import com.kelvin.smartwarehouse.model.Truck;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static com.kelvin.smartwarehouse.management.AppConstants.TRUCK_URL;
+import static com.kelvin.smartwarehouse.managment.TestConstants.*;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = TRUCKS_SCHEMA_SCRIPT)
+public class TruckApiTest {
+
+    private final ObjectMapper objectMapper;
+    private final MockMvc mockMvc;
+
+    static final String importRecordsScript = IMPORT_TRUCKS_SCRIPT;
+    static final String deleteStatement = DELETE_TRUCKS_STATEMENT;
+
+    static final String apiUrl = TRUCK_URL;
+
+    static final long NEGATIVE_LOOKUP_AWAIT_MILLIS = 5000;
+
+    @Autowired
+    public TruckApiTest(ObjectMapper mapper, MockMvc mockMvc) {
+        this.objectMapper = mapper;
+        this.mockMvc = mockMvc;
+    }
+
+    //a rebuild still scanning the table would miss the rows the scripts of the next test insert
+    @AfterEach
+    void awaitRebuild() throws Exception {
+        long deadline = System.currentTimeMillis() + NEGATIVE_LOOKUP_AWAIT_MILLIS;
+        while (getNegativeLookupStats().read("$.rebuilding", Boolean.class) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenSeedDataFromImportSql_whenGetAll_thenOkAndShouldReturnTrucksOrderedByLicensePlate() throws Exception {
+        //given
+        //we have the import_trucks.sql script file loaded
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(5)))
+                .andExpect(header().string("listSize", "5"))
+                .andExpect(jsonPath("$.[0].chassisNumber", is("1HGBH41JXMN109186")))
+                .andExpect(jsonPath("$.[0].licensePlate", is("CA-1001-AB")))
+                .andExpect(jsonPath("$.[0].containerVolume", is(42.5)));
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenBuiltNegativeLookup_whenGetOrDeleteUnknownId_thenShouldShortCircuitWithStacklessNotFound() throws Exception {
+        //given
+        awaitNegativeLookup();
+        long shortCircuits = getShortCircuits();
+        String id = "IdNotPresentInDb";
+
+        //when
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                //then
+                .andExpect(status().isNoContent())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof EntityWithIdNotFoundException))
+                .andExpect(result -> assertThat(result.getResolvedException().getStackTrace().length).isZero())
+                .andExpect(jsonPath("$.message", is(String.format("Truck with id [%s] doesn't exist in database!", id))));
+
+        this.mockMvc.perform(
+                        delete(apiUrl + "/{id}", id))
+                .andExpect(status().isNoContent())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof EntityWithIdNotFoundException));
+
+        assertThat(getShortCircuits()).isEqualTo(shortCircuits + 2);
+
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", "3C6UR5FL1KG501234")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.licensePlate", is("CA-1003-AB")));
+        assertThat(getShortCircuits()).isEqualTo(shortCircuits + 2);
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = importRecordsScript),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = deleteStatement)
+    })
+    void givenBuiltNegativeLookup_whenTruckIsPostedAndDeleted_thenShouldFindItUntilDeleted() throws Exception {
+        //given
+        awaitNegativeLookup();
+        Truck truck = buildTruck("6NPEF4F10LA001234", "CA-1006-AB");
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(truck)))
+                .andExpect(status().isOk());
+
+        //then
+        long shortCircuits = getShortCircuits();
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", truck.getChassisNumber())
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.licensePlate", is("CA-1006-AB")));
+
+        this.mockMvc.perform(
+                        delete(apiUrl + "/{id}", truck.getChassisNumber()))
+                .andExpect(status().isNoContent())
+                .andExpect(result -> assertThat(result.getResolvedException()).isNull());
+
+        //a deleted id stays in the filter, the database answers for it
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", truck.getChassisNumber())
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof EntityWithIdNotFoundException));
+        assertThat(getShortCircuits()).isEqualTo(shortCircuits);
+    }
+
+    @Test
+    @Order(2)
+    void givenTruckWithoutLicensePlate_whenPost_thenBadRequest() throws Exception {
+        //given
+        Truck truck = buildTruck("6NPEF4F10LA001234", null);
+
+        //when
+        this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(truck)))
+                //then
+                .andExpect(status().isBadRequest())
+                .andExpect(result -> assertTrue(result.getResolvedException() instanceof InvalidParameterException))
+                .andExpect(result -> assertThat(result.getResolvedException().getMessage())
+                        .isEqualTo("Truck license plate is required!"));
+    }
+
+    private Truck buildTruck(String chassisNumber, String licensePlate) {
+        Truck truck = new Truck();
+        truck.setChassisNumber(chassisNumber);
+        truck.setLicensePlate(licensePlate);
+        truck.setContainerVolume(60);
+        return truck;
+    }
+
+    //the filter is built in the background, the database answers every lookup until it's done
+    private void awaitNegativeLookup() throws Exception {
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", "IdNotPresentInDb")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+        long deadline = System.currentTimeMillis() + NEGATIVE_LOOKUP_AWAIT_MILLIS;
+        while (!getNegativeLookupStats().read("$.built", Boolean.class) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(getNegativeLookupStats().read("$.built", Boolean.class)).isTrue();
+    }
+
+    private long getShortCircuits() throws Exception {
+        return getNegativeLookupStats().read("$.shortCircuits", Long.class);
+    }
+
+    private DocumentContext getNegativeLookupStats() throws Exception {
+        MvcResult mvcResult = this.mockMvc.perform(
+                        get(apiUrl + "/_stats/negative-lookup")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        return JsonPath.parse(mvcResult.getResponse().getContentAsString());
+    }
+}
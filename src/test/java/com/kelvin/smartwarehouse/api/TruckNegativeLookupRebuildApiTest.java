@@ -0,0 +1,114 @@
+package com.kelvin.smartwarehouse.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.DocumentContext;
+import com.jayway.jsonpath.JsonPath;
+import com.kelvin.smartwarehouse.model.Truck;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.test.context.jdbc.SqlGroup;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static com.kelvin.smartwarehouse.management.AppConstants.TRUCK_URL;
+import static com.kelvin.smartwarehouse.managment.TestConstants.*;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@TestPropertySource(properties = "api.negative-lookup.rebuild-millis=" + TruckNegativeLookupRebuildApiTest.REBUILD_MILLIS)
+@Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = TRUCKS_SCHEMA_SCRIPT)
+public class TruckNegativeLookupRebuildApiTest {
+
+    private final ObjectMapper objectMapper;
+    private final MockMvc mockMvc;
+
+    static final String apiUrl = TRUCK_URL;
+
+    static final long REBUILD_MILLIS = 300;
+    static final long NEGATIVE_LOOKUP_AWAIT_MILLIS = 5000;
+
+    @Autowired
+    public TruckNegativeLookupRebuildApiTest(ObjectMapper mapper, MockMvc mockMvc) {
+        this.objectMapper = mapper;
+        this.mockMvc = mockMvc;
+    }
+
+    @Test
+    @Order(2)
+    @SqlGroup({
+            @Sql(executionPhase = Sql.ExecutionPhase.BEFORE_TEST_METHOD, scripts = IMPORT_TRUCKS_SCRIPT),
+            @Sql(executionPhase = Sql.ExecutionPhase.AFTER_TEST_METHOD, statements = DELETE_TRUCKS_STATEMENT)
+    })
+    void givenTruckPostedAfterFilterWasBuilt_whenFilterIsRebuilt_thenShouldStillFindItAndShortCircuitUnknownIds() throws Exception {
+        //given
+        long builtAt = awaitNegativeLookupBuiltAfter(0);
+        Truck truck = new Truck();
+        truck.setChassisNumber("6NPEF4F10LA001234");
+        truck.setLicensePlate("CA-1006-AB");
+        truck.setContainerVolume(60);
+        this.mockMvc.perform(
+                        post(apiUrl)
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content(objectMapper.writeValueAsString(truck)))
+                .andExpect(status().isOk());
+
+        //when
+        Thread.sleep(REBUILD_MILLIS + 100);
+        long shortCircuits = getNegativeLookupStats().read("$.shortCircuits", Long.class);
+        //a stale filter keeps answering while the new one is built
+        expectNotFound("IdNotPresentInDb");
+        assertThat(getNegativeLookupStats().read("$.shortCircuits", Long.class)).isEqualTo(shortCircuits + 1);
+        awaitNegativeLookupBuiltAfter(builtAt);
+
+        //then
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", truck.getChassisNumber())
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.licensePlate", is("CA-1006-AB")));
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", "1HGBH41JXMN109186")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk());
+        expectNotFound("AnotherIdNotPresentInDb");
+    }
+
+    private void expectNotFound(String id) throws Exception {
+        this.mockMvc.perform(
+                        get(apiUrl + "/{id}", id)
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+    }
+
+    //a lookup with a missing or stale filter starts a rebuild in the background
+    private long awaitNegativeLookupBuiltAfter(long builtAfter) throws Exception {
+        expectNotFound("IdNotPresentInDb");
+        long deadline = System.currentTimeMillis() + NEGATIVE_LOOKUP_AWAIT_MILLIS;
+        Long builtAt = getNegativeLookupStats().read("$.builtAt", Long.class);
+        while ((builtAt == null || builtAt <= builtAfter) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            builtAt = getNegativeLookupStats().read("$.builtAt", Long.class);
+        }
+        assertThat(builtAt).isGreaterThan(builtAfter);
+        return builtAt;
+    }
+
+    private DocumentContext getNegativeLookupStats() throws Exception {
+        MvcResult mvcResult = this.mockMvc.perform(
+                        get(apiUrl + "/_stats/negative-lookup")
+                                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn();
+        return JsonPath.parse(mvcResult.getResponse().getContentAsString());
+    }
+}
@@ -18,4 +18,13 @@ public class TestConstants {
     public final static String ORDER_ITEMS_SCHEMA_SCRIPT = ORDER_ITEMS_SCRIPTS +"/order_items_schema.sql";
     public final static String IMPORT_ORDER_ITEMS_SCRIPT = ORDER_ITEMS_SCRIPTS +"/import_order_items.sql";
     public final static String DELETE_ORDER_ITEMS_STATEMENT = "delete from order_items;";
+
+    public final static String TRUCKS_SCRIPTS = "/truck";
+    public final static String TRUCKS_SCHEMA_SCRIPT = TRUCKS_SCRIPTS + "/truck_schema.sql";
+    public final static String IMPORT_TRUCKS_SCRIPT = TRUCKS_SCRIPTS + "/import_trucks.sql";
+    public final static String DELETE_TRUCKS_STATEMENT = "delete from truck;";
+
+    public final static String DELETE_IDEMPOTENCY_KEYS_STATEMENT = "delete from idempotency_keys;";
+    public final static String DELETE_INVENTORY_HOLDS_STATEMENT = "delete from inventory_holds;";
+    public final static String DELETE_INVENTORY_RESERVATIONS_STATEMENT = "delete from inventory_reservations;";
 }
@@ -0,0 +1,102 @@
+package com.kelvin.smartwarehouse.utils;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicLong;
+
+// compares the time and the peak heap of reading a large sheet with the DOM and the event model,
+// run it alone with a fixed heap, e.g. mvn test -Dtest=XlsxUtilsBenchmark -DargLine=-Xmx2g
+@Disabled("benchmark, run manually")
+public class XlsxUtilsBenchmark {
+
+    private static final int ROWS = 200_000;
+
+    @Test
+    void compareDomAndEventModelReads() throws Exception {
+        File file = Files.createTempFile("benchmark", ".xlsx").toFile();
+        try {
+            writeOrders(file);
+            System.out.printf("%d rows, %d KB on disk%n", ROWS, file.length() / 1024);
+
+            measure("event model", () -> {
+                AtomicLong cells = new AtomicLong();
+                XlsxUtils.readRows(file, row -> cells.addAndGet(row.length));
+                return cells.get();
+            });
+            measure("DOM", () -> {
+                long cells = 0;
+                try (XSSFWorkbook workbook = new XSSFWorkbook(file)) {
+                    for (Row row : workbook.getSheetAt(0)) {
+                        cells += row.getPhysicalNumberOfCells();
+                    }
+                }
+                return cells;
+            });
+        } finally {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    private void writeOrders(File file) throws Exception {
+        try (SXSSFWorkbook workbook = new SXSSFWorkbook(100); FileOutputStream out = new FileOutputStream(file)) {
+            CellStyle dateStyle = workbook.createCellStyle();
+            dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+
+            Sheet sheet = workbook.createSheet("Orders");
+            Row header = sheet.createRow(0);
+            header.createCell(0).setCellValue("submittedDate");
+            header.createCell(1).setCellValue("deadlineDate");
+            header.createCell(2).setCellValue("status");
+            for (int i = 1; i <= ROWS; i++) {
+                Row row = sheet.createRow(i);
+                Cell submittedDate = row.createCell(0);
+                submittedDate.setCellValue(LocalDate.of(2022, 1, 1).plusDays(i % 365));
+                submittedDate.setCellStyle(dateStyle);
+                Cell deadlineDate = row.createCell(1);
+                deadlineDate.setCellValue(LocalDate.of(2030, 1, 1).plusDays(i % 365));
+                deadlineDate.setCellStyle(dateStyle);
+                row.createCell(2).setCellValue(i % 2 == 0 ? "CREATED" : "AWAITING_APPROVAL");
+            }
+            workbook.write(out);
+            workbook.dispose();
+        }
+    }
+
+    private void measure(String name, Read read) throws Exception {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        long start = System.nanoTime();
+        long cells = read.read();
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        System.out.printf("%s: %d cells in %d ms, peak heap %d MB%n", name, cells, millis, peakHeap / (1024 * 1024));
+    }
+
+    @FunctionalInterface
+    private interface Read {
+
+        long read() throws Exception;
+    }
+}
@@ -0,0 +1,5 @@
+INSERT INTO truck(chassis_number, license_plate, container_volume) VALUES('1HGBH41JXMN109186', 'CA-1001-AB', 42.5);
+INSERT INTO truck(chassis_number, license_plate, container_volume) VALUES('2FTRX18W1XCA01234', 'CA-1002-AB', 38.0);
+INSERT INTO truck(chassis_number, license_plate, container_volume) VALUES('3C6UR5FL1KG501234', 'CA-1003-AB', 55.25);
+INSERT INTO truck(chassis_number, license_plate, container_volume) VALUES('4V4NC9EH5EN171234', 'CA-1004-AB', 76.0);
+INSERT INTO truck(chassis_number, license_plate, container_volume) VALUES('5KJJAED19FPGU1234', 'CA-1005-AB', 82.75);
@@ -0,0 +1,7 @@
+DROP TABLE truck if EXISTS;
+
+CREATE TABLE truck(
+  chassis_number VARCHAR(255) NOT NULL PRIMARY KEY,
+  license_plate VARCHAR(255) UNIQUE,
+  container_volume DOUBLE
+);